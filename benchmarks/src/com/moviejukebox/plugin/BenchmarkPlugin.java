@@ -0,0 +1,33 @@
+/* Filmdelta.se plugin
+ *
+ * Filmdelta plugin that stays offline for the benchmarks
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.io.IOException;
+import java.net.URL;
+
+import com.moviejukebox.plugin.poster.CdonPosterCache;
+import com.moviejukebox.tools.WebBrowser;
+
+/**
+ * FilmDeltaSEPlugin with nothing shared between runs, the same as the
+ * test mock: requests get an empty page and ids, posters and records are
+ * kept in memory only.
+ */
+class BenchmarkPlugin extends FilmDeltaSEPlugin {
+
+	BenchmarkPlugin() {
+		filmdeltaBrowser = new WebBrowser() {
+			public String request(URL url) throws IOException {
+				return "";
+			}
+		};
+		webBrowser = filmdeltaBrowser;
+		idIndex = new FilmdeltaIdIndex(null);
+		cdonPosterCache = new CdonPosterCache(null);
+		recordStore = new FilmdeltaRecordStore(null);
+	}
+}
@@ -0,0 +1,62 @@
+/* Filmdelta.se plugin
+ *
+ * Saved pages used by the benchmarks
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.io.File;
+
+import com.moviejukebox.tools.FileTools;
+
+/**
+ * Reads the saved filmdelta pages and nfo files of the benchmark corpus.
+ * The corpus is the directory set by the system property
+ * filmdelta.benchmark.corpus, by default the test fixtures.
+ */
+final class Corpus {
+
+	private static final String DIRECTORY = System.getProperty("filmdelta.benchmark.corpus", "test/FilmDeltaSEPluginTestFixtures");
+
+	private Corpus() {
+	}
+
+	static String read(String name) {
+		File file = new File(DIRECTORY, name);
+		String content = FileTools.readFileToString(file);
+		if (content == null || content.length() == 0) {
+			throw new IllegalStateException("Missing benchmark page " + file.getAbsolutePath());
+		}
+		return content;
+	}
+
+	/**
+	 * A google result page of a realistic size with ten hits, the first
+	 * a filmdelta link. With found false a page without matches.
+	 */
+	static String googleResultPage(boolean found) {
+		StringBuilder page = new StringBuilder(32768);
+		page.append("<html><head><title>den lilla sjöjungfrun site:filmdelta.se/filmer - Google-sökning</title>");
+		for (int i = 0; i < 60; i++) {
+			page.append("<script>window.google={kEI:\"").append(i).append("\",kEXPI:\"17259,23628,24878,25907\"};</script>\n");
+		}
+		page.append("</head><body>");
+		if (found) {
+			page.append("<div id=res class=med><h2 class=hd>Search Results</h2><div><ol>");
+			for (int i = 0; i < 10; i++) {
+				int id = 15353 + i * 1000;
+				page.append("<li class=g><h3 class=r><a href=\"http://www.filmdelta.se/filmer/").append(id)
+					.append("/den_lilla_sjojungfrun/\" class=l onmousedown=\"return clk(this.href,'','','res','")
+					.append(i + 1).append("','')\"><em>Den lilla sj&ouml;jungfrun</em> - Filmdelta</a></h3>")
+					.append("<div class=\"s\">Sj&ouml;jungfrun Ariel dr&ouml;mmer om livet p&aring; land...<br><cite>www.filmdelta.se/filmer/")
+					.append(id).append("/den_lilla_sjojungfrun/</cite></div></li>\n");
+			}
+			page.append("</ol></div></div>");
+		} else {
+			page.append("<b>apo panda site:filmdelta.se/filmer</b> - did not match any documents.  <p style=margin-top:1em>Suggestions:<ul><li>Make sure all words are spelled correctly.<li>Try different keywords.</ul>");
+		}
+		page.append("</body></html>");
+		return page.toString();
+	}
+}
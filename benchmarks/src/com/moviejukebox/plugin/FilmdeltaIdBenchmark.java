@@ -0,0 +1,83 @@
+/* Filmdelta.se plugin
+ *
+ * Benchmark of finding filmdelta ids in nfo files and google results
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviejukebox.model.Movie;
+
+/**
+ * scanNFO and the one pass NfoIds scan over the saved nfo files,
+ * makeFilmDeltaId on a filmdelta url
+ * and reading the id from google result pages with and without matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class FilmdeltaIdBenchmark {
+
+	@Param({"den_lilla_sjojungfrun.nfo", "bulgur-walle.nfo", "apo_panda.nfo"})
+	public String nfoFile;
+
+	private String nfo;
+	private String url;
+	private String googleHit;
+	private String googleMiss;
+	private FilmDeltaSEPlugin plugin;
+
+	@Setup
+	public void setUp() {
+		nfo = Corpus.read(nfoFile);
+		url = "http://www.filmdelta.se/filmer/133861/kung_fu_panda/";
+		googleHit = Corpus.googleResultPage(true);
+		googleMiss = Corpus.googleResultPage(false);
+		plugin = new BenchmarkPlugin();
+	}
+
+	@Benchmark
+	public Movie scanNFO() {
+		Movie movie = new Movie();
+		movie.setTitle("Den lilla sjöjungfrun");
+		plugin.scanNFO(nfo, movie);
+		return movie;
+	}
+
+	@Benchmark
+	public NfoIds scanNfoIds() {
+		return NfoIds.scan(nfo);
+	}
+
+	@Benchmark
+	public String makeFilmDeltaId() {
+		return FilmDeltaSEPlugin.makeFilmDeltaId(url, 31, 0);
+	}
+
+	@Benchmark
+	public String parseGoogleResult() {
+		return FilmDeltaSEPlugin.parseGoogleResult(googleHit);
+	}
+
+	@Benchmark
+	public String parseGoogleResultNoMatches() {
+		return FilmDeltaSEPlugin.parseGoogleResult(googleMiss);
+	}
+}
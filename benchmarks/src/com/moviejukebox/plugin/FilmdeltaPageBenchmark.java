@@ -0,0 +1,61 @@
+/* Filmdelta.se plugin
+ *
+ * Benchmark of scraping filmdelta movie pages
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviejukebox.model.Movie;
+
+/**
+ * Parsing a saved filmdelta page, alone and as part of
+ * updateFilmdeltaMediaInfo which also updates the movie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class FilmdeltaPageBenchmark {
+
+	@Param({"den_lilla_sjojungfrun.html", "barbie_tiggarflickan.html"})
+	public String page;
+
+	private String html;
+	private FilmDeltaSEPlugin plugin;
+
+	@Setup
+	public void setUp() {
+		html = Corpus.read(page);
+		plugin = new BenchmarkPlugin();
+	}
+
+	@Benchmark
+	public FilmdeltaRecord parse() {
+		return FilmdeltaPageParser.parse(html);
+	}
+
+	@Benchmark
+	public Movie updateFilmdeltaMediaInfo() {
+		Movie movie = new Movie();
+		movie.setTitle("Den lilla sjöjungfrun");
+		plugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun", html);
+		return movie;
+	}
+}
@@ -0,0 +1,70 @@
+/* Filmdelta.se plugin
+ *
+ * Benchmark of creating the plugin and scanning the first movie
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviejukebox.model.Movie;
+
+/**
+ * Time to the first scan in a new JVM: each fork creates a plugin once
+ * and, for firstScan, scans one movie from a saved nfo and filmdelta page
+ * without going online. Nothing is warmed up, so class loading and the
+ * creation of the shared caches, browser and metrics are in the time.
+ *
+ * secondPlugin creates two plugins, its difference to createPlugin is
+ * what each further instance costs once the shared parts exist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class PluginStartupBenchmark {
+
+	private String nfo;
+	private String html;
+
+	@Setup
+	public void setUp() {
+		nfo = Corpus.read("den_lilla_sjojungfrun.nfo");
+		html = Corpus.read("den_lilla_sjojungfrun.html");
+	}
+
+	@Benchmark
+	public FilmDeltaSEPlugin createPlugin() {
+		return new BenchmarkPlugin();
+	}
+
+	@Benchmark
+	public Movie firstScan() {
+		FilmDeltaSEPlugin plugin = new BenchmarkPlugin();
+		Movie movie = new Movie();
+		movie.setTitle("Den lilla sjöjungfrun");
+		plugin.scanNFO(nfo, movie);
+		plugin.updateFilmdeltaMediaInfo(movie, movie.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID), html);
+		return movie;
+	}
+
+	@Benchmark
+	public FilmDeltaSEPlugin secondPlugin() {
+		new BenchmarkPlugin();
+		return new BenchmarkPlugin();
+	}
+}
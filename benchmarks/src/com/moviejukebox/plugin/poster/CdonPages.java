@@ -0,0 +1,47 @@
+/* Filmdelta.se plugin
+ *
+ * CDON pages for the benchmarks
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+/**
+ * Builds CDON product pages of a realistic size, about 60 kB of markup
+ * with the cover in the middle of the page.
+ */
+final class CdonPages {
+
+	private CdonPages() {
+	}
+
+	/**
+	 * @param cover "large" for a page with a large front cover, "small"
+	 * for a page with only the small cover, anything else for a page
+	 * without cover
+	 */
+	static String productPage(String cover) {
+		StringBuilder page = new StringBuilder(65536);
+		page.append("<html><head><title>Mora Tr&#228;sk - CDON.COM</title></head><body>");
+		filler(page, 150);
+		if ("large".equals(cover) || "small".equals(cover)) {
+			page.append("<div class=\"product-image-container\">");
+			page.append("<img src=\"/media-dynamic/images/product/000/406/406535.jpg\" alt=\"Mora Tr&#228;sk\" class=\"product\" />");
+			page.append("</div>");
+		}
+		if ("large".equals(cover)) {
+			page.append("<p><a href=\"/media-dynamic/images/product/00/04/06/24/72/3/77cbe33d-3352-43b2-b460-4370582448df.jpg\" rel=\"imageviewer\">St&#246;rre framsida</a></p>");
+		}
+		filler(page, 150);
+		page.append("</body></html>");
+		return page.toString();
+	}
+
+	private static void filler(StringBuilder page, int rows) {
+		for (int i = 0; i < rows; i++) {
+			page.append("<tr><td class=\"format\"><img src=\"/media-static/images/format/2-199-small.gif\" alt=\"DVD\" /></td>");
+			page.append("<td class=\"title\"><a href=\"http://cdon.se/film/produkt-").append(i).append("\">Produkt ").append(i).append("</a></td>");
+			page.append("<td class=\"price\"><span>99 kr</span></td></tr>\n");
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/* Filmdelta.se plugin
+ *
+ * Benchmark of finding the cover on CDON product pages
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moviejukebox.model.Movie;
+
+/**
+ * Compares CdonPosterExtractor with the split based extraction it
+ * replaced. Run with the gc profiler (-prof gc) to see the allocation
+ * per operation, the extractor should only allocate the returned url.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CdonPosterExtractorBenchmark {
+
+	@Param({"large", "small", "none"})
+	public String cover;
+
+	private String page;
+
+	@Setup
+	public void setUp() {
+		page = CdonPages.productPage(cover);
+	}
+
+	@Benchmark
+	public String extractor() {
+		return CdonPosterExtractor.extractPosterUrl(page);
+	}
+
+	@Benchmark
+	public String split() {
+		if (page.contains(CdonPosterExtractor.LARGE_COVER)) {
+			return findUrlString(CdonPosterExtractor.LARGE_COVER, page.split("<"));
+		} else if (page.contains(CdonPosterExtractor.SMALL_COVER)) {
+			return findUrlString(CdonPosterExtractor.SMALL_COVER, page.split("<"));
+		}
+		return Movie.UNKNOWN;
+	}
+
+	/*
+	 * The extraction used before CdonPosterExtractor
+	 */
+	private static String findUrlString(String searchString, String[] htmlArray) {
+		String[] posterURL = null;
+		for (String s : htmlArray) {
+			if (s.contains(searchString)) {
+				posterURL = s.split("\"|\\s");
+				break;
+			}
+		}
+		if (posterURL != null && posterURL.length > 2 && posterURL[2].contains(".jpg")) {
+			return "http://cdon.se" + posterURL[2];
+		}
+		return Movie.UNKNOWN;
+	}
+}
@@ -0,0 +1,50 @@
+/* Filmdelta.se plugin
+ *
+ * Benchmark of finding the cover with the cdon poster plugin
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CdonPosterPlugin.extractCdonPosterUrl on CDON product pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CdonPosterPluginBenchmark {
+
+	@Param({"large", "small", "none"})
+	public String cover;
+
+	private String page;
+	private CdonPosterPlugin plugin;
+
+	@Setup
+	public void setUp() {
+		page = CdonPages.productPage(cover);
+		plugin = new CdonPosterPlugin();
+	}
+
+	@Benchmark
+	public String extractCdonPosterUrl() {
+		return plugin.extractCdonPosterUrl(page);
+	}
+}
@@ -13,6 +13,7 @@
 
 package com.moviejukebox.plugin.poster;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -22,143 +23,201 @@ import java.util.logging.Logger;
 import com.moviejukebox.model.IMovieBasicInformation;
 import com.moviejukebox.model.Identifiable;
 import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.CircuitOpenException;
 import com.moviejukebox.tools.HTMLTools;
+import com.moviejukebox.tools.Metrics;
+import com.moviejukebox.tools.Metrics.Outcome;
 import com.moviejukebox.tools.WebBrowser;
+import com.moviejukebox.tools.WebBrowsers;
 
+/**
+ * Poster plugin for cdon.se.
+ *
+ * Shares its browser, poster cache, season resolver and poster prefetcher
+ * with the filmdelta plugin, so the plugin is built and shipped together
+ * with filmdeltaplugin/src: CdonPosterCache, CdonPosterExtractor,
+ * CdonShowResolver, PosterPrefetcher, Metrics, WebBrowsers and
+ * CircuitOpenException are in that tree, not in YAMJ.
+ */
 public class CdonPosterPlugin implements IMoviePosterPlugin, ITvShowPosterPlugin {
     private static Logger logger = Logger.getLogger("moviejukebox");
 
     private WebBrowser webBrowser;
+    private CdonPosterCache posterCache;
+    private CdonShowResolver showResolver;
+    // null when posters are not prefetched
+    private PosterPrefetcher posterPrefetcher;
+    private Metrics metrics;
 
     public CdonPosterPlugin() {
         super();
-        webBrowser = new WebBrowser();
+        // share the browser, cached cdon pages, connection limits and found posters with the filmdelta plugin
+        webBrowser = WebBrowsers.getSharedBrowser();
+        posterCache = CdonPosterCache.getSharedCache();
+        showResolver = CdonShowResolver.getSharedResolver();
+        posterPrefetcher = PosterPrefetcher.getSharedPrefetcher();
+        metrics = Metrics.getShared();
     }
 
-    private String getCdonMovieDetailsPage(String movieURL) {
-        String cdonMoviePage;
-        try {
-            // sanity check on result before trying to load details page from url
-            if (!movieURL.isEmpty() && movieURL.contains("http")) {
-                // fetch movie page from cdon
-                StringBuffer buf = new StringBuffer(movieURL);
-                cdonMoviePage = webBrowser.request(buf.toString());
-                return cdonMoviePage;
-            } else {
-                // search didn't even find an url to the movie
-                logger.finer("Error in fetching movie detail page from CDON for movie: " + movieURL);
-                return Movie.UNKNOWN;
-            }
-        } catch (Exception error) {
-            logger.severe("Error while retreiving CDON image for movie : " + movieURL);
-            // logger.severe("Error : " + e.getMessage());
+    private String fetchCdonMovieDetailsPage(String movieURL) throws IOException {
+        // sanity check on result before trying to load details page from url
+        if (!movieURL.isEmpty() && movieURL.contains("http")) {
+            // fetch movie page from cdon
+            return WebBrowsers.request(webBrowser, movieURL, CdonPosterExtractor.PAGE_MARKERS);
+        } else {
+            // search didn't even find an url to the movie
+            logger.finer("Error in fetching movie detail page from CDON for movie: " + movieURL);
             return Movie.UNKNOWN;
         }
     }
 
-    private String extractCdonPosterUrl(String cdonMoviePage) {
-
-        String cdonPosterURL = Movie.UNKNOWN;
-        String[] htmlArray = cdonMoviePage.split("<");
-
-        // check if there is an large front cover image for this movie
-        if (cdonMoviePage.contains("St&#246;rre framsida")) {
-            // first look for a large cover
-            cdonPosterURL = findUrlString("St&#246;rre framsida", htmlArray);
-        } else if (cdonMoviePage.contains("/media-dynamic/images/product/")) {
-            // if not found look for a small cover
-            cdonPosterURL = findUrlString("/media-dynamic/images/product/", htmlArray);
-        } else {
+    String extractCdonPosterUrl(String cdonMoviePage) {
+        // look for a large front cover first, then for a small cover
+        String cdonPosterURL = CdonPosterExtractor.extractPosterUrl(cdonMoviePage);
+        if (Movie.UNKNOWN.equals(cdonPosterURL)) {
             logger.info(" No CDON cover was found for movie ");
+        } else {
+            logger.finest("FilmdeltaSE: found cdon cover: " + cdonPosterURL);
         }
         return cdonPosterURL;
     }
 
-    private String findUrlString(String searchString, String[] htmlArray) {
-        String result;
-        String[] posterURL = null;
-        // all cdon pages don't look the same so
-        // loop over the array to find the string with a link to an image
-        int i = 0;
-        for (String s : htmlArray) {
-            if (s.contains(searchString)) {
-                // found a matching string
-                posterURL = htmlArray[i].split("\"|\\s");
-                break;
-            }
-            i++;
-        }
-        // sanity check again (the found url should point to a jpg)
-        if (posterURL.length > 2 && posterURL[2].contains(".jpg")) {
-            result = "http://cdon.se" + posterURL[2];
-            logger.finest("FilmdeltaSE: found cdon cover: " + result);
-            return result;
-        } else {
-            logger.info("(FilmdeltaSE) Error in finding poster url");
+    @Override
+    public String getIdFromMovieInfo(String title, String year, int tvSeason) {
+        try {
+            return searchMovieUrl(title, tvSeason);
+        } catch (Exception error) {
+            logRequestFailure("Error while retreiving CDON id for movie : " + title, error);
             return Movie.UNKNOWN;
         }
     }
 
-    @Override
-    public String getIdFromMovieInfo(String title, String year, int tvSeason) {
+    private String searchMovieUrl(String title, int tvSeason) throws IOException {
         String response = Movie.UNKNOWN;
         String xml = null;
 
-        // Search CDON to get an URL to the movie page
-        try {
-            StringBuffer sb = new StringBuffer("http://cdon.se/search?q=");
-            sb.append(URLEncoder.encode(title, "UTF-8"));
-            if (tvSeason >= 0) {
-                sb.append("+").append(URLEncoder.encode("säsong", "UTF-8"));
-                sb.append("+" + tvSeason);
+        // all seasons of a tv show are found with one search for the show
+        if (tvSeason > 0) {
+            response = showResolver.getSeasonUrl(webBrowser, title, tvSeason);
+            if (!Movie.UNKNOWN.equals(response)) {
+                logger.finest("CDon.es: found cdon url for season " + tvSeason + " = " + response);
+                return response;
             }
-            xml = webBrowser.request(sb.toString());
-            // find the movie url in the search result page
-            if (xml.contains("/section-movie.gif\" alt=\"\" />")) {
-                int beginIndex = xml.indexOf("/section-movie.gif\" alt=\"\" />") + 28;
-                response = HTMLTools.extractTag(xml.substring(beginIndex), "<td class=\"title\">", 0);
-                // Split string to extract the url
-                if (response.contains("http")) {
-                    String[] splitMovieURL = response.split("\\s");
-                    response = splitMovieURL[1].replaceAll("href|=|\"", "");
-                    logger.finest("CDon.es: found cdon movie url = " + response);
-                } else {
-                    response = Movie.UNKNOWN;
-                    logger.finer("CDon.es: error extracting movie url for: " + title);
-                }
+        }
 
+        // Search CDON to get an URL to the movie page
+        StringBuffer sb = new StringBuffer("http://cdon.se/search?q=");
+        sb.append(URLEncoder.encode(title, "UTF-8"));
+        if (tvSeason >= 0) {
+            sb.append("+").append(URLEncoder.encode("säsong", "UTF-8"));
+            sb.append("+" + tvSeason);
+        }
+        xml = webBrowser.request(sb.toString());
+        // find the movie url in the search result page
+        if (xml.contains("/section-movie.gif\" alt=\"\" />")) {
+            int beginIndex = xml.indexOf("/section-movie.gif\" alt=\"\" />") + 28;
+            response = HTMLTools.extractTag(xml.substring(beginIndex), "<td class=\"title\">", 0);
+            // Split string to extract the url
+            if (response.contains("http")) {
+                String[] splitMovieURL = response.split("\\s");
+                response = splitMovieURL[1].replaceAll("href|=|\"", "");
+                logger.finest("CDon.es: found cdon movie url = " + response);
             } else {
                 response = Movie.UNKNOWN;
-                logger.finer("CDon.es: error finding movieURL..");
+                logger.finer("CDon.es: error extracting movie url for: " + title);
             }
-        } catch (Exception error) {
-            logger.severe("Error while retreiving CDON id for movie : " + title);
-            logger.severe("Error : " + error.getMessage());
+
+        } else {
+            response = Movie.UNKNOWN;
+            logger.finer("CDon.es: error finding movieURL..");
         }
         return response;
     }
 
+    /*
+     * Search CDON for the title and return the poster url. Titles searched
+     * before are answered by the poster cache shared with the filmdelta
+     * plugin, also when CDON had no cover for them.
+     */
+    private String getPosterUrlForTitle(Identifiable ident, String title, int tvSeason) {
+        String response = posterCache.get(title, tvSeason);
+        if (response != null) {
+            logger.finest("CDon.es: cached poster for " + title + " : " + response);
+            String id = posterCache.getCdonUrl(title, tvSeason);
+            if (ident != null && id != null) {
+                ident.setId(getName(), id);
+            }
+            return getLocalUrl(response);
+        }
+        String phase = Metrics.CDON_SEARCH;
+        long start = System.nanoTime();
+        String id;
+        try {
+            id = searchMovieUrl(title, tvSeason);
+            metrics.record(phase, start, Movie.UNKNOWN.equalsIgnoreCase(id) ? Outcome.MISS : Outcome.SUCCESS);
+            response = Movie.UNKNOWN;
+            // Id found
+            if (!Movie.UNKNOWN.equalsIgnoreCase(id)) {
+                if (ident != null) {
+                    ident.setId(getName(), id);
+                }
+                phase = Metrics.CDON_DETAIL;
+                start = System.nanoTime();
+                response = extractCdonPosterUrl(fetchCdonMovieDetailsPage(id));
+                metrics.record(phase, start, Movie.UNKNOWN.equals(response) ? Outcome.MISS : Outcome.SUCCESS);
+            }
+        } catch (Exception error) {
+            metrics.record(phase, start, Outcome.ERROR);
+            // failed requests are not remembered as misses
+            logRequestFailure("Failed retreiving Cdon poster for movie : " + title, error);
+            return Movie.UNKNOWN;
+        }
+        posterCache.put(title, tvSeason, response, id);
+        return getLocalUrl(response);
+    }
+
     @Override
     public String getPosterUrl(String id) {
         String response = Movie.UNKNOWN;
         String xml = "";
+        long start = System.nanoTime();
         try {
-            xml = getCdonMovieDetailsPage(id);
+            xml = fetchCdonMovieDetailsPage(id);
             // extract poster url and return it
             response = extractCdonPosterUrl(xml);
+            metrics.record(Metrics.CDON_DETAIL, start, Movie.UNKNOWN.equals(response) ? Outcome.MISS : Outcome.SUCCESS);
+            response = getLocalUrl(response);
         } catch (Exception error) {
-            logger.severe("Failed retreiving Cdon poster for movie : " + id);
-            final Writer eResult = new StringWriter();
-            final PrintWriter printWriter = new PrintWriter(eResult);
-            error.printStackTrace(printWriter);
-            logger.severe(eResult.toString());
+            metrics.record(Metrics.CDON_DETAIL, start, Outcome.ERROR);
+            if (error instanceof CircuitOpenException) {
+                logger.finer("Not retreiving Cdon poster for movie : " + id + " : " + error.getMessage());
+            } else {
+                logger.severe("Failed retreiving Cdon poster for movie : " + id);
+                final Writer eResult = new StringWriter();
+                final PrintWriter printWriter = new PrintWriter(eResult);
+                error.printStackTrace(printWriter);
+                logger.severe(eResult.toString());
+            }
         }
         return response;
     }
 
+    /*
+     * While cdon.se is down its circuit breaker refuses the requests and
+     * logs that once, instead of an error per movie
+     */
+    private void logRequestFailure(String message, Exception error) {
+        if (error instanceof CircuitOpenException) {
+            logger.finer(message + " : " + error.getMessage());
+        } else {
+            logger.severe(message);
+            logger.severe("Error : " + error.getMessage());
+        }
+    }
+
     @Override
     public String getPosterUrl(String title, String year, int tvSeason) {
-        return getPosterUrl(getIdFromMovieInfo(title, year, tvSeason));
+        return getPosterUrlForTitle(null, title, tvSeason);
     }
 
     @Override
@@ -168,7 +227,9 @@ public class CdonPosterPlugin implements IMoviePosterPlugin, ITvShowPosterPlugin
 
     @Override
     public String getPosterUrl(String id, int season) {
-        return getPosterUrl(id);
+        // id may be the page of another season of the same show
+        String seasonUrl = showResolver.getOtherSeasonUrl(id, season);
+        return getPosterUrl(seasonUrl != null ? seasonUrl : id);
     }
 
     @Override
@@ -178,7 +239,7 @@ public class CdonPosterPlugin implements IMoviePosterPlugin, ITvShowPosterPlugin
 
     @Override
     public String getPosterUrl(String title, String year) {
-        return getPosterUrl(getIdFromMovieInfo(title, year));
+        return getPosterUrlForTitle(null, title, -1);
     }
 
     @Override
@@ -186,13 +247,9 @@ public class CdonPosterPlugin implements IMoviePosterPlugin, ITvShowPosterPlugin
         String id = getId(ident);
         if (Movie.UNKNOWN.equalsIgnoreCase(id)) {
             if (movieInformation.isTVShow()) {
-                id = getIdFromMovieInfo(movieInformation.getTitle(), movieInformation.getYear(), movieInformation.getSeason());
+                return getPosterUrlForTitle(ident, movieInformation.getTitle(), movieInformation.getSeason());
             } else {
-                id = getIdFromMovieInfo(movieInformation.getTitle(), movieInformation.getYear());
-            }
-            // Id found
-            if (!Movie.UNKNOWN.equalsIgnoreCase(id)) {
-                ident.setId(getName(), id);
+                return getPosterUrlForTitle(ident, movieInformation.getTitle(), -1);
             }
         }
 
@@ -207,6 +264,17 @@ public class CdonPosterPlugin implements IMoviePosterPlugin, ITvShowPosterPlugin
         return Movie.UNKNOWN;
     }
 
+    /*
+     * The prefetched copy of a found poster once it is there, until then
+     * the poster is downloaded in the background
+     */
+    private String getLocalUrl(String posterUrl) {
+        if (posterPrefetcher != null && !Movie.UNKNOWN.equals(posterUrl)) {
+            return posterPrefetcher.getLocalUrl(posterUrl);
+        }
+        return posterUrl;
+    }
+
     private String getId(Identifiable ident) {
         String response = Movie.UNKNOWN;
         if (ident != null) {
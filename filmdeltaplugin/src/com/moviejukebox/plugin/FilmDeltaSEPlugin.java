@@ -7,15 +7,47 @@
 
 package com.moviejukebox.plugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 import com.moviejukebox.model.Movie;
+import com.moviejukebox.plugin.poster.CdonPosterCache;
+import com.moviejukebox.plugin.poster.CdonPosterExtractor;
+import com.moviejukebox.plugin.poster.CdonShowResolver;
+import com.moviejukebox.plugin.poster.PosterPrefetcher;
+import com.moviejukebox.tools.CircuitOpenException;
+import com.moviejukebox.tools.Deadline;
+import com.moviejukebox.tools.Fingerprint;
 import com.moviejukebox.tools.HTMLTools;
+import com.moviejukebox.tools.Metrics;
+import com.moviejukebox.tools.Metrics.Outcome;
+import com.moviejukebox.tools.PageMarkers;
 import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.SingleFlight;
+import com.moviejukebox.tools.StringPool;
+import com.moviejukebox.tools.WebBrowser;
+import com.moviejukebox.tools.WebPage;
+import com.moviejukebox.tools.WebBrowsers;
 
 
 /**
@@ -28,16 +60,61 @@ import com.moviejukebox.tools.PropertiesUtil;
 public class FilmDeltaSEPlugin extends ImdbPlugin {
 
     public static String FILMDELTA_PLUGIN_ID = "filmdelta";
-    protected TheTvDBPlugin tvdb;
+    //same id as the cdon poster plugin uses
+    public static String CDON_PLUGIN_ID = "cdon";
+    //null until a tv show is scanned, see getTvdb. Volatile because scans
+    //of one instance may run on several threads
+    protected volatile TheTvDBPlugin tvdb;
+    //google, filmdelta and cdon requests
+    protected WebBrowser filmdeltaBrowser;
+    protected FilmdeltaIdIndex idIndex;
+    //null unless set for this instance, see getCatalog
+    protected FilmdeltaCatalog catalog;
+    protected CdonPosterCache cdonPosterCache;
+    protected CdonShowResolver cdonShows;
+    //null when posters are not prefetched
+    protected PosterPrefetcher posterPrefetcher;
+    protected FilmdeltaRecordStore recordStore;
+    protected Metrics metrics;
     
-    //Get properties for plotlength and rating
-    int preferredPlotLength = Integer.parseInt(PropertiesUtil.getProperty("filmdelta.plot.maxlength", "400"));
-    String preferredRating = PropertiesUtil.getProperty("filmdelta.rating", "filmdelta");
-    String getcdonposter = PropertiesUtil.getProperty("filmdelta.getcdonposter", "true");
+    //Get properties for plotlength and rating, read once for all instances
+    int preferredPlotLength = FilmdeltaConfig.getSharedConfig().getPlotMaxLength();
+    String preferredRating = FilmdeltaConfig.getSharedConfig().getRating();
+    boolean getcdonposter = FilmdeltaConfig.getSharedConfig().isCdonPoster();
+    long scanDeadline = FilmdeltaConfig.getSharedConfig().getScanDeadline();
+    double filmdeltaShare = FilmdeltaConfig.getSharedConfig().getFilmdeltaShare();
+
+    private static final Pattern VALID_ID = Pattern.compile("\\d{3,}/[\\w-&;#]+");
+    //only the first filmdelta link in the google result is used, results
+    //without one are not cached so the search is repeated next time
+    private static final PageMarkers GOOGLE_RESULT = new PageMarkers(200, "www.filmdelta.se/filmer/")
+    		.notCachedWhenMissing();
+    //the movie data ends before the vote box on a filmdelta page
+    static final PageMarkers FILMDELTA_PAGE = new PageMarkers(0, "id=\"vote\"");
+
+    private static TheTvDBPlugin sharedTvdb;
+
+    //filmdelta pages being parsed, by filmdelta id and page fingerprint
+    private static final SingleFlight<String, FilmdeltaRecord> parses = new SingleFlight<String, FilmdeltaRecord>();
+
+    //runs the lookups of scan that don't depend on each other, two for each
+    //of filmdelta.scan.threads scans at a time, further lookups are queued
+    private static final ExecutorService lookupExecutor = createLookupExecutor(
+    		2 * Integer.parseInt(PropertiesUtil.getProperty("filmdelta.scan.threads", "8")));
 
     public FilmDeltaSEPlugin() {
         super();
-        tvdb = new TheTvDBPlugin(); 
+        // the tvdb plugin and the catalog are only created when they are needed,
+        // the rest is shared by all instances and reads its files on first use
+        // browser shared with the cdon plugin, the imdb scan keeps
+        // the browser of ImdbPlugin
+        filmdeltaBrowser = WebBrowsers.getSharedBrowser();
+        idIndex = FilmdeltaIdIndex.getSharedIndex();
+        cdonPosterCache = CdonPosterCache.getSharedCache();
+        cdonShows = CdonShowResolver.getSharedResolver();
+        posterPrefetcher = PosterPrefetcher.getSharedPrefetcher();
+        recordStore = FilmdeltaRecordStore.getSharedStore();
+        metrics = Metrics.getShared();
         logger.finest("Filmdelta plugin created..");
     }
 
@@ -48,83 +125,485 @@ public class FilmDeltaSEPlugin extends ImdbPlugin {
         String filmdeltaId = mediaFile.getId(FILMDELTA_PLUGIN_ID);
         String imdbId = mediaFile.getId(ImdbPlugin.IMDB_PLUGIN_ID);
         boolean imdbScanned = false; 
+        // the rating imdb gave this scan, averaged with the filmdelta rating
+        int imdbRating = -1;
+        
+        // the nfo told us the cdon page, no need to search for it. Otherwise
+        // the filmdelta lookup searches CDON once it knows the final title,
+        // see FilmdeltaLookup
+        Future<String> posterLookup = null;
+        final String posterTitle = mediaFile.getTitle();
+        final int season = mediaFile.getSeason();
+        final String cdonUrl = mediaFile.getId(CDON_PLUGIN_ID);
+        boolean searchPoster = getcdonposter && cdonUrl.equalsIgnoreCase(Movie.UNKNOWN);
+        if (getcdonposter && !searchPoster) {
+        	posterLookup = lookupExecutor.submit(new Callable<String>() {
+        		public String call() {
+        			return getCDONPosterURLFromPage(posterTitle, cdonUrl);
+        		}
+        	});
+        }
         
         // if IMDB id is specified in the NFO scan imdb first
         // (to get a valid movie title and improve detection rate 
         // for getFilmdeltaId-function)
         if (imdbId != null && !imdbId.equalsIgnoreCase(Movie.UNKNOWN)) {
-        	super.scan(mediaFile);
+        	if (scanImdb(mediaFile)) {
+        		imdbRating = mediaFile.getRating();
+        	}
         	imdbScanned = true;
         }
         
+        // find a filmdeltaId (url) from google and fetch the filmdelta page
+        // as soon as the id is known, while imdb or tvdb is scanned
+        FilmdeltaLookup filmdeltaLookup;
         if (filmdeltaId == null || filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) { 
-        	//find a filmdeltaId (url) from google
-        	filmdeltaId = getFilmdeltaId(mediaFile.getTitle(), mediaFile.getYear(), mediaFile.getSeason());
-            if (!filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) {
-            	mediaFile.setId(FILMDELTA_PLUGIN_ID, filmdeltaId);
-            }
+        	filmdeltaLookup = new FilmdeltaLookup(Movie.UNKNOWN, mediaFile.getTitle(), 
+        			mediaFile.getYear(), season, !mediaFile.isTVShow());
         } else {
         	// If ID is specified in NFO, set original title to unknown
         	mediaFile.setTitle(Movie.UNKNOWN);
+        	filmdeltaLookup = new FilmdeltaLookup(filmdeltaId, Movie.UNKNOWN, 
+        			Movie.UNKNOWN, season, !mediaFile.isTVShow());
         }
+        if (searchPoster) {
+        	filmdeltaLookup.searchPoster(mediaFile.isOverrideTitle() ? mediaFile.getTitle() : null);
+        }
+        Future<WebPage> filmdeltaPage = lookupExecutor.submit(filmdeltaLookup);
+        // lookups still running when their share of the budget is used up
+        // are given up, the movie keeps what was found until then. The
+        // budget starts when the filmdelta lookup starts running, not while
+        // it waits for a lookup thread, and covers the filmdelta and CDON
+        // lookups only: the imdb and tvdb scans fill the movie as they go
+        // and can't be given up half way, they run on this thread within
+        // the timeouts of their plugins
+        Deadline deadline = filmdeltaLookup.getDeadline();
         
         //scrape info from imdb or tvdb
     	if (mediaFile.isTVShow()) {
-    		tvdb.scan(mediaFile);
+    		scanTvdb(mediaFile);
     	} else if (!imdbScanned)  {
-    		super.scan(mediaFile);
+    		if (scanImdb(mediaFile)) {
+    			imdbRating = mediaFile.getRating();
+    		}
+        }
+    	
+    	WebPage fdeltaPage = await(filmdeltaPage, "filmdelta lookup for " + posterTitle, null, 
+    			deadline.getRemainingMillis(filmdeltaShare));
+    	filmdeltaId = filmdeltaLookup.getFoundId();
+        if (!filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) {
+        	mediaFile.setId(FILMDELTA_PLUGIN_ID, filmdeltaId);
+        	if (imdbRating > 0) {
+        		recordStore.putImdbRating(filmdeltaId, imdbRating);
+        	}
         }
         
         //only scrape filmdelta if a valid filmdeltaId was found
         //and the movie is not a tvshow
-        if (filmdeltaId != null 
-        		&& !filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN) 
+        if (!filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN) 
         		&& !mediaFile.isTVShow()) {
-        	retval = updateFilmdeltaMediaInfo(mediaFile, filmdeltaId);
+        	retval = updateFilmdeltaMediaInfo(mediaFile, filmdeltaId, fdeltaPage);
         }
         
         // Get poster from CDON.se
         // if property getcdonposter is set to true
-        if (getcdonposter.equalsIgnoreCase("true")) {
-        	String posterURL = getCDONPosterURL(mediaFile.getTitle(), mediaFile.getSeason());
-        	if (!posterURL.equals(Movie.UNKNOWN)) {
+        if (getcdonposter) {
+        	String posterURL = Movie.UNKNOWN;
+        	boolean search = true;
+        	if (posterLookup != null) {
+        		// search if the cdon page from the nfo had no poster
+        		posterURL = await(posterLookup, "CDON poster lookup for " + posterTitle, Movie.UNKNOWN, 
+        				deadline.getRemainingMillis());
+        		search = posterURL.equals(Movie.UNKNOWN);
+        	} else {
+        		posterLookup = filmdeltaLookup.takePosterLookup();
+        		String searchedTitle = filmdeltaLookup.getPosterTitle();
+        		if (posterLookup != null && searchedTitle.equalsIgnoreCase(mediaFile.getTitle())) {
+        			posterURL = await(posterLookup, "CDON poster lookup for " + searchedTitle, Movie.UNKNOWN, 
+        					deadline.getRemainingMillis());
+        			// CDON was searched with this title already, unless the
+        			// search was given up at the deadline
+        			search = posterURL.equals(Movie.UNKNOWN) && posterLookup.isCancelled();
+        		} else if (posterLookup != null) {
+        			// the title was changed after all, a hit may be another movie
+        			posterLookup.cancel(true);
+        		}
+        	}
+        	// the fallback search is not bounded by the deadline, the movie
+        	// would lose its poster
+        	if (search) {
+        		posterURL = getCDONPosterURL(mediaFile.getTitle(), season);
+        	}
+        	// give the movie the prefetched copy of the poster once it is
+        	// there, until then it is downloaded in the background
+        	if (posterPrefetcher != null && !posterURL.equals(Movie.UNKNOWN)) {
+        		posterURL = posterPrefetcher.getLocalUrl(posterURL);
+        	}
+        	// the poster url changes with the image, so the same url is
+        	// the same poster
+        	if (!posterURL.equals(Movie.UNKNOWN) && !posterURL.equals(mediaFile.getPosterURL())) {
         		mediaFile.setPosterURL(posterURL);
             }	
         }
+        if (deadline.isBounded() && !deadline.isExpired()) {
+        	metrics.count(Metrics.SCAN_DEADLINE, Outcome.SUCCESS);
+        }
         return retval;
     }
 
+    private static ExecutorService createLookupExecutor(int threads) {
+    	ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+    			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    		public Thread newThread(Runnable r) {
+    			Thread thread = new Thread(r, "filmdelta-lookup");
+    			thread.setDaemon(true);
+    			return thread;
+    		}
+    	});
+    	executor.allowCoreThreadTimeOut(true);
+    	return executor;
+    }
+
+    private boolean scanImdb(Movie movie) {
+    	long start = System.nanoTime();
+    	Outcome outcome = Outcome.ERROR;
+    	try {
+    		outcome = super.scan(movie) ? Outcome.SUCCESS : Outcome.MISS;
+    	} finally {
+    		metrics.record(Metrics.IMDB, start, outcome);
+    	}
+    	return outcome == Outcome.SUCCESS;
+    }
+
+    /*
+     * The tvdb plugin shared by all instances, created by the first tv
+     * show scan so movie only libraries never create it
+     */
+    protected TheTvDBPlugin getTvdb() {
+    	if (tvdb == null) {
+    		tvdb = getSharedTvdb();
+    	}
+    	return tvdb;
+    }
+
+    private static synchronized TheTvDBPlugin getSharedTvdb() {
+    	if (sharedTvdb == null) {
+    		sharedTvdb = new TheTvDBPlugin();
+    	}
+    	return sharedTvdb;
+    }
+
+    /*
+     * The catalog of this instance or the shared catalog, which is read the
+     * first time an id is looked up. Null if there is no catalog.
+     */
+    protected FilmdeltaCatalog getCatalog() {
+    	return catalog != null ? catalog : FilmdeltaCatalog.getSharedCatalog();
+    }
+
+    private void scanTvdb(Movie movie) {
+    	long start = System.nanoTime();
+    	Outcome outcome = Outcome.ERROR;
+    	try {
+    		outcome = getTvdb().scan(movie) ? Outcome.SUCCESS : Outcome.MISS;
+    	} finally {
+    		metrics.record(Metrics.TVDB, start, outcome);
+    	}
+    }
+
+    /*
+     * Finds the filmdelta id (unless it is already known) and then
+     * fetches the filmdelta page. Runs in the background during scan.
+     * 
+     * When asked to, it also starts the CDON poster search as soon as the
+     * final title of the movie is known: the title of the filmdelta page,
+     * or right away for a movie with an overridden title. Without a
+     * filmdelta page (tv shows, movies not on filmdelta) the title comes
+     * from imdb or tvdb and scan searches CDON itself.
+     */
+    private class FilmdeltaLookup implements Callable<WebPage> {
+    	private final CountDownLatch started = new CountDownLatch(1);
+    	private volatile Deadline deadline;
+    	private volatile String filmdeltaId;
+    	private boolean searchPoster;
+    	private String posterTitle;
+    	private Future<String> posterLookup;
+    	private final String title;
+    	private final String year;
+    	private final int season;
+    	private final boolean fetchPage;
+    	
+    	FilmdeltaLookup(String filmdeltaId, String title, String year, int season, boolean fetchPage) {
+    		this.filmdeltaId = filmdeltaId;
+    		this.title = title;
+    		this.year = year;
+    		this.season = season;
+    		this.fetchPage = fetchPage;
+    	}
+    	
+    	/*
+    	 * Search CDON for the poster, with title if it is final already
+    	 */
+    	synchronized void searchPoster(String title) {
+    		searchPoster = true;
+    		if (title != null && !title.equalsIgnoreCase(Movie.UNKNOWN)) {
+    			startPosterLookup(title);
+    		}
+    	}
+    	
+    	public WebPage call() {
+    		deadline = new Deadline(scanDeadline);
+    		started.countDown();
+    		if (filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) {
+    			filmdeltaId = getFilmdeltaId(title, year, season);
+    		}
+    		if (fetchPage && !filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) {
+    			WebPage page = getFilmdeltaPage(filmdeltaId);
+    			if (isSearchingPoster()) {
+    				// the filmdelta title replaces the one the movie has
+    				FilmdeltaRecord record = getFilmdeltaRecord(filmdeltaId, page);
+    				if (record != null && !record.getTitle().equals(Movie.UNKNOWN)) {
+    					startPosterLookup(record.getTitle());
+    				}
+    			}
+    			return page;
+    		}
+    		return null;
+    	}
+    	
+    	private synchronized boolean isSearchingPoster() {
+    		return searchPoster && posterLookup == null;
+    	}
+    	
+    	private synchronized void startPosterLookup(final String title) {
+    		if (!searchPoster || posterLookup != null) {
+    			return;
+    		}
+    		posterTitle = title;
+    		posterLookup = lookupExecutor.submit(new Callable<String>() {
+    			public String call() {
+    				return getCDONPosterURL(title, season);
+    			}
+    		});
+    	}
+    	
+    	/*
+    	 * The poster search, null if none was started. No search is
+    	 * started after this.
+    	 */
+    	synchronized Future<String> takePosterLookup() {
+    		searchPoster = false;
+    		return posterLookup;
+    	}
+    	
+    	synchronized String getPosterTitle() {
+    		return posterTitle;
+    	}
+    	
+    	String getFoundId() {
+    		return filmdeltaId;
+    	}
+    	
+    	/*
+    	 * The scan deadline, started when the lookup starts running. Waits
+    	 * for a lookup thread to take the lookup.
+    	 */
+    	Deadline getDeadline() {
+    		try {
+    			started.await();
+    			return deadline;
+    		} catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    			return new Deadline(scanDeadline);
+    		}
+    	}
+    }
+    
+    /*
+     * Wait at most timeout milliseconds for a background lookup, failed if
+     * it failed or took too long. A lookup given up is interrupted, which
+     * stops it while it waits for a connection or a rate limit token; a
+     * request it already sent can't be interrupted and runs on in the
+     * background until it is answered or reaches its read timeout, its
+     * result is dropped.
+     */
+    private <T> T await(Future<T> lookup, String description, T failed, long timeout) {
+    	try {
+    		return timeout == Long.MAX_VALUE ? lookup.get() : lookup.get(timeout, TimeUnit.MILLISECONDS);
+    	} catch (TimeoutException e) {
+    		lookup.cancel(true);
+    		logger.info("Scan deadline reached, giving up " + description);
+    		metrics.count(Metrics.SCAN_DEADLINE, Outcome.ERROR);
+    	} catch (ExecutionException e) {
+    		logger.severe("Failed " + description + " : " + e.getCause());
+    	} catch (InterruptedException e) {
+    		lookup.cancel(true);
+    		Thread.currentThread().interrupt();
+    	}
+    	return failed;
+    }
+
+    /**
+     * Scan several movies at the same time, using filmdelta.scan.threads
+     * threads. How many requests are sent to google, filmdelta and cdon at
+     * the same time is limited per host by filmdelta.connections.<host>.
+     * 
+     * The imdb and tvdb plugins used by scan must be safe to call from
+     * several threads.
+     * 
+     * YAMJ itself does not call this, so it is not used in a YAMJ run.
+     * YAMJ calls scan for one movie at a time from its own threads, and
+     * the only parallel work of the plugin there is each scan running
+     * its filmdelta and CDON lookups in the background while it scans
+     * imdb or tvdb. The per host limits apply to every scan, from
+     * whichever thread.
+     * 
+     * @return true if all movies were scanned
+     */
+    public boolean scanAll(Collection<Movie> movies) {
+    	if (movies.isEmpty()) {
+    		return true;
+    	}
+    	int threads = Integer.parseInt(PropertiesUtil.getProperty("filmdelta.scan.threads", "8"));
+    	ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, movies.size())));
+    	List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(movies.size());
+    	for (final Movie movie : movies) {
+    		results.add(executor.submit(new Callable<Boolean>() {
+    			public Boolean call() {
+    				return Boolean.valueOf(scan(movie));
+    			}
+    		}));
+    	}
+    	executor.shutdown();
+    	
+    	boolean retval = true;
+    	try {
+    		for (Future<Boolean> result : results) {
+    			try {
+    				retval &= result.get().booleanValue();
+    			} catch (ExecutionException e) {
+    				logger.severe("Failed scanning movie : " + e.getCause());
+    				retval = false;
+    			}
+    		}
+    	} catch (InterruptedException e) {
+    		executor.shutdownNow();
+    		Thread.currentThread().interrupt();
+    		retval = false;
+    	}
+    	return retval;
+    }
+
+    /**
+     * Import filmdelta pages saved in a directory or zip file (see
+     * SavedFilmdeltaPages) without going online. The pages are read and
+     * parsed on one thread per processor, filmdelta.import.threads to use
+     * another number, into the record store; pages unchanged since they
+     * were last parsed are not parsed again. Movies with the filmdelta id
+     * of a saved page are then updated from it. Movies without a filmdelta
+     * id get the one the id index has for their title, year and season,
+     * if there is a saved page for it; other movies are left alone.
+     * 
+     * @return the number of pages imported
+     */
+    public int importFilmdeltaPages(File source, Collection<Movie> movies) throws IOException {
+    	final SavedFilmdeltaPages saved = new SavedFilmdeltaPages(source);
+    	List<String> ids = saved.getFilmdeltaIds();
+    	Map<String, FilmdeltaRecord> records = new HashMap<String, FilmdeltaRecord>(ids.size() * 2);
+    	int threads = Integer.parseInt(PropertiesUtil.getProperty("filmdelta.import.threads",
+    			String.valueOf(Runtime.getRuntime().availableProcessors())));
+    	ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, ids.size())));
+    	try {
+    		List<Future<FilmdeltaRecord>> results = new ArrayList<Future<FilmdeltaRecord>>(ids.size());
+    		for (final String id : ids) {
+    			results.add(executor.submit(new Callable<FilmdeltaRecord>() {
+    				public FilmdeltaRecord call() throws IOException {
+    					return getFilmdeltaRecord(id, saved.read(id));
+    				}
+    			}));
+    		}
+    		for (int i = 0; i < ids.size(); i++) {
+    			try {
+    				records.put(ids.get(i), results.get(i).get());
+    			} catch (ExecutionException e) {
+    				logger.severe("Failed importing filmdelta page " + ids.get(i) + " : " + e.getCause());
+    			}
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	} finally {
+    		executor.shutdownNow();
+    		saved.close();
+    	}
+    	
+    	for (Movie movie : movies) {
+    		String filmdeltaId = movie.getId(FILMDELTA_PLUGIN_ID);
+    		if (filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) {
+    			filmdeltaId = idIndex.get(movie.getTitle(), movie.getYear(), movie.getSeason());
+    		}
+    		FilmdeltaRecord record = records.get(filmdeltaId);
+    		if (record != null) {
+    			movie.setId(FILMDELTA_PLUGIN_ID, filmdeltaId);
+    			updateFilmdeltaMediaInfo(movie, filmdeltaId, record);
+    		}
+    	}
+    	logger.finest("Imported " + records.size() + " filmdelta pages from " + source);
+    	return records.size();
+    }
+
     /* Find id from url in nfo. Format:
      *  - http://www.filmdelta.se/filmer/<digits>/<movie_name>/ OR
      *  - http://www.filmdelta.se/prevsearch/<text>/filmer/<digits>/<movie_name>
      */
     @Override
     public void scanNFO(String nfo, Movie movie) {
-        // Always look for imdb id look for ttXXXXXX
-        super.scanNFO(nfo, movie);
-        logger.finest("Scanning NFO for Filmdelta Id");
+        // look for the imdb, filmdelta and cdon urls in one pass
+        logger.finest("Scanning NFO for Imdb, Filmdelta and CDON Ids");
+        NfoIds ids = NfoIds.scan(nfo);
+        if (ids.getImdbId() != null) {
+        	movie.setId(ImdbPlugin.IMDB_PLUGIN_ID, ids.getImdbId());
+        } else {
+        	// the imdb plugin knows other ways to write an imdb id
+        	super.scanNFO(nfo, movie);
+        }
         
-        int beginIndex = nfo.indexOf("www.filmdelta.se/prevsearch");
-        if (beginIndex != -1) {
-        	beginIndex = beginIndex + 27;
-            String filmdeltaId = makeFilmDeltaId(nfo, beginIndex, 2);
-            movie.setId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID, filmdeltaId);
-            logger.finest("Filmdelta Id found in nfo = " + movie.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
-        } else if (nfo.indexOf("www.filmdelta.se/filmer") != -1) {
-        	beginIndex = nfo.indexOf("www.filmdelta.se/filmer") + 24;
-        	String filmdeltaId = makeFilmDeltaId(nfo, beginIndex, 0);
-            movie.setId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID, filmdeltaId);
+        if (ids.getFilmdeltaId() != null) {
+            movie.setId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID, ids.getFilmdeltaId());
+            idIndex.put(movie.getTitle(), movie.getYear(), movie.getSeason(), ids.getFilmdeltaId());
             logger.finest("Filmdelta Id found in nfo = " + movie.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
         } else {  
         	logger.finer("No Filmdelta Id found in nfo!");
         }
+        
+        if (ids.getCdonUrl() != null) {
+        	movie.setId(CDON_PLUGIN_ID, ids.getCdonUrl());
+        	logger.finest("CDON url found in nfo = " + ids.getCdonUrl());
+        }
     }
 
      /**
      * retrieve FilmDeltaID matching the specified movie name and year. 
-     * This routine is based on a  google request.
+     * Ids found earlier are taken from the id index, then the local
+     * filmdelta catalog is searched (if there is one). Only when
+     * both fail this routine is based on a  google request.
      */
     protected String getFilmdeltaId(String movieName, String year, int season) {
+    	String indexedId = idIndex.get(movieName, year, season);
+    	if (!indexedId.equals(Movie.UNKNOWN)) {
+    		logger.finest("FilmdeltaID from index = " + indexedId);
+    		return indexedId;
+    	}
+    	//the catalog doesn't know about seasons so only use it for movies
+    	FilmdeltaCatalog catalog = getCatalog();
+    	if (catalog != null && season <= 0) {
+    		String catalogId = catalog.findFilmdeltaId(movieName, year);
+    		if (isValidFilmdeltaId(catalogId)) {
+    			logger.finest("FilmdeltaID from catalog = " + catalogId);
+    			idIndex.put(movieName, year, season, catalogId);
+    			return catalogId;
+    		}
+    	}
+    	long start = System.nanoTime();
     	try {
             StringBuffer sb = new StringBuffer("http://www.google.se/search?hl=sv&q=");
             sb.append(URLEncoder.encode(movieName, "UTF-8"));
@@ -132,40 +611,62 @@ public class FilmDeltaSEPlugin extends ImdbPlugin {
                 sb.append("+").append(year);
             }
             sb.append(URLEncoder.encode("+site:filmdelta.se/filmer", "UTF-8"));
-            String googleHtml = webBrowser.request(sb.toString());
+            String googleHtml = WebBrowsers.request(filmdeltaBrowser, sb.toString(), GOOGLE_RESULT);
             
-            //String <ul><li> is only present in the google page for
-            //no matches so check if we got a page with results
-            if (googleHtml.indexOf("<ul><li>") ==  -1) {
-            	//we have a a google page with valid filmdelta links
-            	int beginIndex = googleHtml.indexOf("www.filmdelta.se/filmer/") + 24;
-            	String filmdeltaId = makeFilmDeltaId(googleHtml, beginIndex, 0);
+            String filmdeltaId = parseGoogleResult(googleHtml);
+            if (filmdeltaId != null) {
                 logger.finest("FilmdeltaID = " + filmdeltaId);
-                if (filmdeltaId.matches("\\d{3,}/[\\w-&;]+")) {
+                if (isValidFilmdeltaId(filmdeltaId)) {
+                	metrics.record(Metrics.GOOGLE, start, Outcome.SUCCESS);
+                	idIndex.put(movieName, year, season, filmdeltaId);
                     return filmdeltaId;
                 } else {
+                	metrics.record(Metrics.GOOGLE, start, Outcome.MISS);
                     logger.info("FilmDeltaSEPlugin: found a filmdeltaId but it's not valid. Id: " + filmdeltaId);
                 	return Movie.UNKNOWN;
                 }
             } else {
             	//no valid results for the search
+            	metrics.record(Metrics.GOOGLE, start, Outcome.MISS);
             	logger.info("No filmdelta.se matches found for movie: \'" + movieName + "\'");
             	return Movie.UNKNOWN;	     	
             }
 
             
         } catch (Exception e) {
-            logger.severe("Failed retreiving Filmdelta Id for movie : " + movieName);
-            logger.severe("Error : " + e.getMessage());
+        	metrics.record(Metrics.GOOGLE, start, Outcome.ERROR);
+        	logRequestFailure("Failed retreiving Filmdelta Id for movie : " + movieName, e);
             return Movie.UNKNOWN;
         }
     }
     
+    /*
+     * The filmdelta id of the first filmdelta link on a google result
+     * page, null if the page says there were no matches
+     */
+    static String parseGoogleResult(String googleHtml) {
+        //String <ul><li> is only present in the google page for
+        //no matches so check if we got a page with results
+        if (googleHtml.indexOf("<ul><li>") == -1) {
+        	//we have a a google page with valid filmdelta links
+        	int beginIndex = googleHtml.indexOf("www.filmdelta.se/filmer/") + 24;
+        	return makeFilmDeltaId(googleHtml, beginIndex, 0);
+        }
+        return null;
+    }
+
+    /*
+     * A filmdelta id looks like <digits>/<movie_name>
+     */
+    static boolean isValidFilmdeltaId(String filmdeltaId) {
+    	return VALID_ID.matcher(filmdeltaId).matches();
+    }
+    
     /* 
      * Utility method to make a filmdelta id from a string containing a 
      * filmdelta url
      */
-	private String makeFilmDeltaId(String nfo, int beginIndex, int skip) {
+	static String makeFilmDeltaId(String nfo, int beginIndex, int skip) {
 		StringTokenizer st = new StringTokenizer(nfo.substring(beginIndex), "/");
 		for (int i = 0; i < skip; i++) {
 			st.nextToken();	
@@ -178,161 +679,262 @@ public class FilmDeltaSEPlugin extends ImdbPlugin {
      * Scan Filmdelta html page for the specified movie
      */
     protected boolean updateFilmdeltaMediaInfo(Movie movie, String filmdeltaId) {
-    	
-    	String fdeltaHtml = "";
     	//fetch filmdelta html page for movie
-        fdeltaHtml = getFilmdeltaHtml(filmdeltaId);
-        
-        if (!fdeltaHtml.equals(Movie.UNKNOWN)) {
-        	getFilmdeltaTitle(movie, fdeltaHtml);    
-            getFilmdeltaPlot(movie, fdeltaHtml);
-    		//Genres - prefer imdb
-            if (movie.getGenres().isEmpty()) {
-    			getFilmdeltaGenres(movie, fdeltaHtml);
+        return updateFilmdeltaMediaInfo(movie, filmdeltaId, getFilmdeltaPage(filmdeltaId));
+    }
+
+    /*
+     * Update movie from a fetched Filmdelta page, a page that hasn't
+     * changed since it was last parsed isn't parsed again. Without a page
+     * (filmdelta is down) the record parsed last time is used, if any.
+     */
+    private boolean updateFilmdeltaMediaInfo(Movie movie, String filmdeltaId, WebPage page) {
+    	if (page == null || page.isUnchanged()) {
+    		FilmdeltaRecord record = recordStore.get(filmdeltaId);
+    		if (record != null) {
+    			logger.finest((page == null ? "No filmdelta page" : "Unchanged filmdelta page") + ", using " + record);
+    			updateFilmdeltaMediaInfo(movie, filmdeltaId, record);
+    			return true;
     		}
-           	getFilmdeltaDirector(movie, fdeltaHtml);
-            getFilmdeltaCast(movie, fdeltaHtml);
-            getFilmdeltaCountry(movie, fdeltaHtml);
-            getFilmdeltaYear(movie, fdeltaHtml);    
-            getFilmdeltaRating(movie, fdeltaHtml);
-            getFilmdeltaRuntime(movie, fdeltaHtml);	
+    	}
+    	if (page == null) {
+    		return true;
+    	}
+    	return updateFilmdeltaMediaInfo(movie, filmdeltaId, page.getContent());
+    }
+
+    /*
+     * Record for a fetched Filmdelta page, the one parsed last time if the
+     * page is unchanged or missing. Null if there is none.
+     */
+    private FilmdeltaRecord getFilmdeltaRecord(String filmdeltaId, WebPage page) {
+    	if (page == null || page.isUnchanged()) {
+    		FilmdeltaRecord record = recordStore.get(filmdeltaId);
+    		if (record != null || page == null) {
+    			return record;
+    		}
+    	}
+    	String fdeltaHtml = page.getContent();
+    	if (fdeltaHtml == null || fdeltaHtml.equals(Movie.UNKNOWN)) {
+    		return null;
+    	}
+    	return getFilmdeltaRecord(filmdeltaId, fdeltaHtml);
+    }
+
+    /*
+     * Update movie from an already fetched Filmdelta html page, a page with
+     * the same fingerprint as the one last parsed for the id isn't parsed
+     * again
+     */
+    protected boolean updateFilmdeltaMediaInfo(Movie movie, String filmdeltaId, String fdeltaHtml) {
+        if (fdeltaHtml != null && !fdeltaHtml.equals(Movie.UNKNOWN)) {
+        	updateFilmdeltaMediaInfo(movie, filmdeltaId, getFilmdeltaRecord(filmdeltaId, fdeltaHtml));
         }
         return true;
     }
 
-	private String getFilmdeltaHtml(String filmdeltaId) {
-		String result = Movie.UNKNOWN;
+    /*
+     * Record for a filmdelta page, concurrent scans of the same page (parts
+     * or editions of one movie) share one parse
+     */
+    private FilmdeltaRecord getFilmdeltaRecord(final String filmdeltaId, final String fdeltaHtml) {
+    	final String fingerprint = Fingerprint.of(fdeltaHtml);
+    	try {
+    		return parses.execute(filmdeltaId + "#" + fingerprint, new Callable<FilmdeltaRecord>() {
+    			public FilmdeltaRecord call() {
+    				if (fingerprint.equals(recordStore.getFingerprint(filmdeltaId))) {
+    					FilmdeltaRecord record = recordStore.get(filmdeltaId);
+    					if (record != null) {
+    						logger.finest("Same filmdelta page as last time, using " + record);
+    						return record;
+    					}
+    				}
+    				//parse the whole page in one pass
+    				long start = System.nanoTime();
+    				FilmdeltaRecord record = FilmdeltaPageParser.parse(fdeltaHtml);
+    				metrics.record(Metrics.FILMDELTA_PARSE, start, Outcome.SUCCESS);
+    				logger.finest("Scraped " + record);
+    				recordStore.put(filmdeltaId, record, fingerprint);
+    				return record;
+    			}
+    		});
+    	} catch (RuntimeException e) {
+    		throw e;
+    	} catch (Exception e) {
+    		//the parse throws no checked exceptions
+    		throw new IllegalStateException(e);
+    	}
+    }
+
+    /*
+     * The movie setters are only called for values that differ from the
+     * ones the movie already has, so a movie that already holds the record
+     * is left untouched (and not marked dirty)
+     */
+    private void updateFilmdeltaMediaInfo(Movie movie, String filmdeltaId, FilmdeltaRecord record) {
+        updateFilmdeltaTitle(movie, record);
+        updateFilmdeltaPlot(movie, record);
+        //Genres - prefer imdb
+        if (movie.getGenres().isEmpty()) {
+        	updateFilmdeltaGenres(movie, record);
+        }
+        updateFilmdeltaDirector(movie, record);
+        updateFilmdeltaCast(movie, record);
+        updateFilmdeltaCountry(movie, record);
+        updateFilmdeltaYear(movie, record);
+        updateFilmdeltaRating(movie, filmdeltaId, record);
+        updateFilmdeltaRuntime(movie, record);
+    }
+
+	private WebPage getFilmdeltaPage(String filmdeltaId) {
+		WebPage page = null;
+		long start = System.nanoTime();
 		try {
         	logger.finest("searchstring: " + "http://www.filmdelta.se/filmer/" + filmdeltaId);
-            result = webBrowser.request("http://www.filmdelta.se/filmer/" + filmdeltaId + "/");
-            logger.finest("result from filmdelta: " + result);
+        	page = new WebPage(new URL("http://www.filmdelta.se/filmer/" + filmdeltaId + "/"), FILMDELTA_PAGE);
+        	WebBrowsers.fetch(filmdeltaBrowser, page);
+        	metrics.record(Metrics.FILMDELTA_FETCH, start, Outcome.SUCCESS);
+            logger.finest("result from filmdelta: " + page.getContent());
             
         } catch (Exception e) {
-            logger.severe("Failed retreiving movie data from filmdelta.se : " + filmdeltaId);
-            e.printStackTrace();
+        	metrics.record(Metrics.FILMDELTA_FETCH, start, Outcome.ERROR);
+        	if (e instanceof CircuitOpenException) {
+        		logger.finer("Not retreiving movie data from filmdelta.se : " + e.getMessage());
+        	} else {
+        		logger.severe("Failed retreiving movie data from filmdelta.se : " + filmdeltaId);
+        		e.printStackTrace();
+        	}
+            page = null;
         }
-		return result;
+		return page;
+	}
+
+	/*
+	 * Requests to a site that is down are refused by its circuit breaker,
+	 * which logs once that the site is down instead of once per movie
+	 */
+	private void logRequestFailure(String message, Exception e) {
+		if (e instanceof CircuitOpenException) {
+			logger.finer(message + " : " + e.getMessage());
+		} else {
+			logger.severe(message);
+			logger.severe("Error : " + e.getMessage());
+		}
 	}
 	
-    private void getFilmdeltaTitle(Movie movie, String fdeltaHtml) {
+    private void updateFilmdeltaTitle(Movie movie, FilmdeltaRecord record) {
 		if (!movie.isOverrideTitle()) {
-			String newTitle = HTMLTools.extractTag(fdeltaHtml, "title>", 0, "<");
-			//split the string so that we get the title at index 0
-			String[] titleArray = newTitle.split("-\\sFilmdelta");
-			if (titleArray != null) {
-				newTitle = titleArray[0];
+			if (!record.getTitle().equals(Movie.UNKNOWN)) {
+				if (!record.getTitle().equals(movie.getTitle())) {
+					movie.setTitle(record.getTitle());
+				}
 			} else {
 				logger.finer("Error scraping title");
 			}
-			String originalTitle = HTMLTools.extractTag(fdeltaHtml, "riginaltitel</h4>", 2);
-			logger.finest("Scraped title: " + newTitle);
-			logger.finest("Scraped original title: " + originalTitle);
-			if (!newTitle.equals(Movie.UNKNOWN)) {
-		        movie.setTitle(newTitle.trim());
-			}
-			if (!originalTitle.equals(Movie.UNKNOWN)) {
-				movie.setOriginalTitle(originalTitle);
+			if (!record.getOriginalTitle().equals(Movie.UNKNOWN) 
+					&& !record.getOriginalTitle().equals(movie.getOriginalTitle())) {
+				movie.setOriginalTitle(record.getOriginalTitle());
 			}
 		}
 	}
 
-	private void getFilmdeltaPlot(Movie movie, String fdeltaHtml) {
-		String plot = HTMLTools.extractTag(fdeltaHtml, "<div class=\"text\">", 2);
-		logger.finest("Scraped Plot: " + plot);
+	private void updateFilmdeltaPlot(Movie movie, FilmdeltaRecord record) {
+		String plot = record.getPlot();
 		if (!plot.equals(Movie.UNKNOWN)) {
 			if (plot.length() > preferredPlotLength) { 
 				plot = plot.substring(0, preferredPlotLength) + "...";
 			}
-			movie.setPlot(plot);
+			if (!plot.equals(movie.getPlot())) {
+				movie.setPlot(plot);
+			}
 		}
 	}
     
-	private void getFilmdeltaGenres(Movie movie, String fdeltaHtml) {
-		LinkedList<String> newGenres = new LinkedList<String>();            
-		
-		ArrayList<String> filmdeltaGenres = HTMLTools.extractTags(fdeltaHtml, "<h4>Genre</h4>", "</div>", "<h5>", "</h5>");
-		for (String genre : filmdeltaGenres) {
-			if (genre.length() > 0) {
-				genre = genre.substring(0, genre.length() - 5);
-				newGenres.add(genre);
-			}
-		}           
-		if (!newGenres.isEmpty()) {
-			movie.setGenres(newGenres);
+	private void updateFilmdeltaGenres(Movie movie, FilmdeltaRecord record) {
+		if (!record.getGenres().isEmpty()) {
+			movie.setGenres(new ArrayList<String>(record.getGenres()));
 			logger.finest("Scraped genres: " + movie.getGenres().toString());
 		}
 	}
     
-	private void getFilmdeltaDirector(Movie movie, String fdeltaHtml) {
-		ArrayList<String> filmdeltaDirectors = HTMLTools.extractTags(fdeltaHtml, "<h4>Regiss&ouml;r</h4>", "</div>", "<h5>", "</h5>");
-		String newDirector = "";
-		if (!filmdeltaDirectors.isEmpty()) {
-			for (String dir : filmdeltaDirectors) {
-				dir = dir.substring(0, dir.length() - 4);
-				newDirector = newDirector + dir + " / ";
+	private void updateFilmdeltaDirector(Movie movie, FilmdeltaRecord record) {
+		if (!record.getDirectors().isEmpty()) {
+			//most movies have one director, the pooled name is used as it is
+			String newDirector = record.getDirectors().get(0);
+			if (record.getDirectors().size() > 1) {
+				StringBuilder directors = new StringBuilder(newDirector);
+				for (int i = 1; i < record.getDirectors().size(); i++) {
+					directors.append(" / ").append(record.getDirectors().get(i));
+				}
+				newDirector = StringPool.getPeople().intern(directors.toString());
+			}
+			if (!newDirector.equals(movie.getDirector())) {
+				movie.setDirector(newDirector);
 			}
-			newDirector = newDirector.substring(0, newDirector.length() - 3);
-			movie.setDirector(newDirector);
 			logger.finest("Scraped director: " + movie.getDirector());	
 		}
 	}
     
-	private void getFilmdeltaCast(Movie movie, String fdeltaHtml) {
-		Collection<String> newCast = new ArrayList<String>();
-         
-		for (String actor : HTMLTools.extractTags(fdeltaHtml, "<h4>Sk&aring;despelare</h4>", "</div>", "<h5>", "</h5>")) {
-			String[] newActor = actor.split("</a>");
-			newCast.add(newActor[0]);
-		}
-		if (newCast.size() > 0) { 
-			movie.setCast(newCast);
+	private void updateFilmdeltaCast(Movie movie, FilmdeltaRecord record) {
+		if (!record.getCast().isEmpty() 
+				&& !record.getCast().equals(new ArrayList<String>(movie.getCast()))) { 
+			movie.setCast(new ArrayList<String>(record.getCast()));
 			logger.finest("Scraped actor: " + movie.getCast().toString());
 		}
 	}
     
-    private void getFilmdeltaCountry(Movie movie, String fdeltaHtml) {
-		String country = HTMLTools.extractTag(fdeltaHtml, "Land, &aring;r, l&auml;ngd", 3);
-		movie.setCountry(country);
+    private void updateFilmdeltaCountry(Movie movie, FilmdeltaRecord record) {
+		if (!record.getCountry().equals(movie.getCountry())) {
+			movie.setCountry(record.getCountry());
+		}
 		logger.finest("Scraped country: " + movie.getCountry());
 	}
     
-	private void getFilmdeltaYear(Movie movie, String fdeltaHtml) {
-        String year = HTMLTools.extractTag(fdeltaHtml, "Land, &aring;r, l&auml;ngd", 5);
-        String[] newYear = year.split("\\s");
-        if (newYear.length > 1) {
-        	movie.setYear(newYear[1]);
+	private void updateFilmdeltaYear(Movie movie, FilmdeltaRecord record) {
+        if (!record.getYear().equals(Movie.UNKNOWN)) {
+        	if (!record.getYear().equals(movie.getYear())) {
+        		movie.setYear(record.getYear());
+        	}
             logger.finest("Scraped year: " + movie.getYear());	
         } else {
         	logger.finer("Error scraping year for movie: " + movie.getTitle());
         }
 	}
     
-	private void getFilmdeltaRating(Movie movie, String fdeltaHtml) {
-		String rating = HTMLTools.extractTag(fdeltaHtml, "style=\"margin-top:2px; font-weight:bold;\">", 8, "<");
-		int newRating = 0;
-		//check if valid rating string is found
-		if (rating.indexOf("Snitt") != -1) {
-			String[] result = rating.split(":");
-			rating = result[result.length - 1];
-			logger.finest("filmdelta rating: " + rating);
-			//multiply by 20 to make comparable to IMDB-ratings
-			newRating = (int) (Float.parseFloat(rating) * 20);
-		} else {
+	/*
+	 * The average is taken with the imdb rating stored for the filmdelta id,
+	 * not the rating of the movie, which is already the average when the
+	 * record is applied again (an unchanged page or an import)
+	 */
+	private void updateFilmdeltaRating(Movie movie, String filmdeltaId, FilmdeltaRecord record) {
+		int newRating = record.getRating();
+		if (newRating <= 0) {
 			logger.finer("Error finding filmdelta rating");
 		}
 		//set rating depending on property value set by user
 		if (preferredRating.equals("filmdelta")) {
 			//fallback to imdb if no filmdelta rating is available
-			if (newRating != 0) {
-				movie.setRating(newRating);
+			if (newRating > 0) {
+				if (newRating != movie.getRating()) {
+					movie.setRating(newRating);
+				}
 			} else {
 				logger.finer("Found no filmdelta rating. Using imdb."); 
 			}
 		} else if (preferredRating.equals("average")) {
 			//don't count average rating if filmdelta has no rating
-			if (newRating != 0) {
-				newRating = (newRating + movie.getRating()) / 2;
-				movie.setRating(newRating);
+			int imdbRating = recordStore.getImdbRating(filmdeltaId);
+			if (newRating > 0 && imdbRating > 0) {
+				newRating = (newRating + imdbRating) / 2;
+				if (newRating != movie.getRating()) {
+					movie.setRating(newRating);
+				}
+			} else if (newRating > 0) {
+				//the movie may already have the average from an earlier scan
+				if (movie.getRating() <= 0) {
+					movie.setRating(newRating);
+				}
+				logger.finer("Found no imdb rating, no average calculation done");
 			} else {
 				logger.finer("Found no filmdelta rating, no average calculation done. Using imdb rating");
 			}
@@ -341,129 +943,151 @@ public class FilmDeltaSEPlugin extends ImdbPlugin {
 		logger.finest("Movie.getRating: " + movie.getRating());
 	}
     
-	private void getFilmdeltaRuntime(Movie movie, String fdeltaHtml) {
-		// Run time
-        String runtime = HTMLTools.extractTag(fdeltaHtml, "Land, &aring;r, l&auml;ngd", 7);
-        String[] newRunTime = runtime.split("\\s");
-        if (newRunTime.length > 2) {
-        	movie.setRuntime(newRunTime[1]);
+	private void updateFilmdeltaRuntime(Movie movie, FilmdeltaRecord record) {
+        if (!record.getRuntime().equals(Movie.UNKNOWN)) {
+        	if (!record.getRuntime().equals(movie.getRuntime())) {
+        		movie.setRuntime(record.getRuntime());
+        	}
         	logger.finest("Scraped runtime: " + movie.getRuntime());            	
         }
 	}
 
 	protected String getCDONPosterURL(String movieName, int season) {
-		String movieURL = Movie.UNKNOWN;
-		String cdonMoviePage = Movie.UNKNOWN;
-		String cdonPosterURL = Movie.UNKNOWN;
+		//titles searched before are answered by the poster cache,
+		//also when CDON had no cover for them
+		String cdonPosterURL = cdonPosterCache.get(movieName, season);
+		if (cdonPosterURL != null) {
+			logger.finest("Cached CDON poster for " + movieName + " : " + cdonPosterURL);
+			return cdonPosterURL;
+		}
 		
-		//search CDON to find the url for the movie details page
-		movieURL = getCdonMovieUrl(movieName, season);
-		//then fetch the movie detail page
-		cdonMoviePage = getCdonMovieDetailsPage(movieName, movieURL);		
-		//extract poster url and return it
-		cdonPosterURL = extractCdonPosterUrl(movieName, cdonMoviePage);
+		String phase = Metrics.CDON_SEARCH;
+		long start = System.nanoTime();
+		String movieURL;
+		try {
+			//search CDON to find the url for the movie details page
+			movieURL = searchCdonMovieUrl(movieName, season);
+			metrics.record(phase, start, movieURL.equals(Movie.UNKNOWN) ? Outcome.MISS : Outcome.SUCCESS);
+			cdonPosterURL = Movie.UNKNOWN;
+			if (!movieURL.equals(Movie.UNKNOWN)) {
+				phase = Metrics.CDON_DETAIL;
+				start = System.nanoTime();
+				//then fetch the movie detail page
+				String cdonMoviePage = fetchCdonMovieDetailsPage(movieName, movieURL);		
+				//extract poster url and return it
+				cdonPosterURL = extractCdonPosterUrl(movieName, cdonMoviePage);
+				metrics.record(phase, start, cdonPosterURL.equals(Movie.UNKNOWN) ? Outcome.MISS : Outcome.SUCCESS);
+			}
+		} catch (Exception e) {
+			metrics.record(phase, start, Outcome.ERROR);
+			//failed requests are not remembered as misses
+            logRequestFailure("Error while retreiving CDON image for movie : " + movieName, e);
+            return Movie.UNKNOWN;
+		}
+		cdonPosterCache.put(movieName, season, cdonPosterURL, movieURL);
 		return cdonPosterURL; 
 	}
 
+	/**
+	 * Poster from a known CDON product page, e.g. one given in the nfo
+	 */
+	protected String getCDONPosterURLFromPage(String movieName, String movieURL) {
+		long start = System.nanoTime();
+		try {
+			String cdonMoviePage = fetchCdonMovieDetailsPage(movieName, movieURL);
+			String cdonPosterURL = extractCdonPosterUrl(movieName, cdonMoviePage);
+			metrics.record(Metrics.CDON_DETAIL, start, cdonPosterURL.equals(Movie.UNKNOWN) ? Outcome.MISS : Outcome.SUCCESS);
+			return cdonPosterURL;
+		} catch (Exception e) {
+			metrics.record(Metrics.CDON_DETAIL, start, Outcome.ERROR);
+            logRequestFailure("Error while retreiving CDON image for movie : " + movieName, e);
+            return Movie.UNKNOWN;
+		}
+	}
+
 	protected String getCdonMovieUrl(String movieName, int season) {
+		try {
+			return searchCdonMovieUrl(movieName, season);
+		}
+		catch (Exception e) {
+            logRequestFailure("Error while retreiving CDON image for movie : " + movieName, e);
+            return Movie.UNKNOWN;
+        }
+	}
+	
+	private String searchCdonMovieUrl(String movieName, int season) throws IOException {
 		String html = Movie.UNKNOWN; 
 		String movieURL = Movie.UNKNOWN;
 		
-		//Search CDON to get an URL to the movie page        	
-		try {
-			StringBuffer sb = new StringBuffer("http://cdon.se/search?q=");
-			sb.append(URLEncoder.encode(movieName, "UTF-8")); 
-			if(season > 0) {
-				sb.append("+").append(URLEncoder.encode("säsong", "UTF-8"));
-				sb.append("+" + season);
+		//all seasons of a tv show are found with one search for the show
+		if (season > 0) {
+			movieURL = cdonShows.getSeasonUrl(filmdeltaBrowser, movieName, season);
+			if (!movieURL.equals(Movie.UNKNOWN)) {
+				logger.finest("Found cdon url for season " + season + " = " + movieURL);
+				return movieURL;
 			}
-			html = webBrowser.request(sb.toString());
-			//find the movie url in the search result page
-			if (html.contains("/section-movie.gif\" alt=\"\" />")) {
-				int beginIndex = html.indexOf("/section-movie.gif\" alt=\"\" />")+28;
-				movieURL = HTMLTools.extractTag(html.substring(beginIndex), "<td class=\"title\">", 0);				
-            	//Split string to extract the url
-				if (movieURL.contains("http")) {
-					String[] splitMovieURL = movieURL.split("\\s");
-					movieURL = splitMovieURL[1].replaceAll("href|=|\"", "");
-					logger.finest("Found cdon movie url = " + movieURL);
-				} else {
-					movieURL = Movie.UNKNOWN; 
-					logger.finer("Error extracting movie url for: " + movieName);
-				}
-				
+		}
+		
+		//Search CDON to get an URL to the movie page        	
+		StringBuffer sb = new StringBuffer("http://cdon.se/search?q=");
+		sb.append(URLEncoder.encode(movieName, "UTF-8")); 
+		if(season > 0) {
+			sb.append("+").append(URLEncoder.encode("säsong", "UTF-8"));
+			sb.append("+" + season);
+		}
+		html = filmdeltaBrowser.request(sb.toString());
+		//find the movie url in the search result page
+		if (html.contains("/section-movie.gif\" alt=\"\" />")) {
+			int beginIndex = html.indexOf("/section-movie.gif\" alt=\"\" />")+28;
+			movieURL = HTMLTools.extractTag(html.substring(beginIndex), "<td class=\"title\">", 0);				
+        	//Split string to extract the url
+			if (movieURL.contains("http")) {
+				String[] splitMovieURL = movieURL.split("\\s");
+				movieURL = splitMovieURL[1].replaceAll("href|=|\"", "");
+				logger.finest("Found cdon movie url = " + movieURL);
 			} else {
-				movieURL = Movie.UNKNOWN;
-				logger.finer("Error finding movieURL..");
+				movieURL = Movie.UNKNOWN; 
+				logger.finer("Error extracting movie url for: " + movieName);
 			}
-			return movieURL;
+			
+		} else {
+			movieURL = Movie.UNKNOWN;
+			logger.finer("Error finding movieURL..");
 		}
-		catch (Exception e) {
-            logger.severe("Error while retreiving CDON image for movie : " + movieName);
-            logger.severe("Error : " + e.getMessage());
-            return Movie.UNKNOWN;
-        }
+		return movieURL;
 	}
+	
 	protected String getCdonMovieDetailsPage(String movieName, String movieURL) {	
-		String cdonMoviePage;
     	try {
-    		//sanity check on result before trying to load details page from url
-            if (!movieURL.isEmpty() && movieURL.contains("http")) {
-            	//fetch movie page from cdon
-            	StringBuffer buf = new StringBuffer(movieURL);
-            	cdonMoviePage = webBrowser.request(buf.toString());
-            	return cdonMoviePage;
-            } else {
-            	//search didn't even find an url to the movie
-            	logger.finer("Error in fetching movie detail page from CDON for movie: " + movieName);
-            	return Movie.UNKNOWN;
-            }    		
+    		return fetchCdonMovieDetailsPage(movieName, movieURL);
     	} catch (Exception e) {
     		logger.severe("Error while retreiving CDON image for movie : " + movieName);
             //logger.severe("Error : " + e.getMessage());
             return Movie.UNKNOWN;
     	}
 	}
+	
+	private String fetchCdonMovieDetailsPage(String movieName, String movieURL) throws IOException {	
+		//sanity check on result before trying to load details page from url
+        if (!movieURL.isEmpty() && movieURL.contains("http")) {
+        	//fetch movie page from cdon
+        	return WebBrowsers.request(filmdeltaBrowser, movieURL, CdonPosterExtractor.PAGE_MARKERS);
+        } else {
+        	//search didn't even find an url to the movie
+        	logger.finer("Error in fetching movie detail page from CDON for movie: " + movieName);
+        	return Movie.UNKNOWN;
+        }    		
+	}
+	
 	protected String extractCdonPosterUrl(String movieName, String cdonMoviePage) {
-		
-		String cdonPosterURL = Movie.UNKNOWN;
-		String[] htmlArray = cdonMoviePage.split("<");
-		
-		//check if there is an large front cover image for this movie
-		if (cdonMoviePage.contains("St&#246;rre framsida")) {
-			//first look for a large cover
-			cdonPosterURL = findUrlString("St&#246;rre framsida", htmlArray);
-		} else if(cdonMoviePage.contains("/media-dynamic/images/product/")){
-			//if not found look for a small cover
-			cdonPosterURL = findUrlString("/media-dynamic/images/product/", htmlArray);
-		} else {
+		//look for a large front cover first, then for a small cover
+		String cdonPosterURL = CdonPosterExtractor.extractPosterUrl(cdonMoviePage);
+		if (Movie.UNKNOWN.equals(cdonPosterURL)) {
 			logger.info("No CDON cover was found for movie: " + movieName);
-		}
-		return cdonPosterURL;
-	}
-
-	private String findUrlString(String searchString, String[] htmlArray) {
-		String result;
-		String[] posterURL = null;
-		//all cdon pages don't look the same so
-		//loop over the array to find the string with a link to an image
-		int i = 0;
-		for (String s : htmlArray) {
-			if (s.contains(searchString)) {
-				//found a matching string
-				posterURL = htmlArray[i].split("\"|\\s");
-				break;
-			}
-			i++;
-		}            	
-		//sanity check again (the found url should point to a jpg
-		if (posterURL.length > 2 || posterURL[2].contains(".jpg")) {
-			result = "http://cdon.se" + posterURL[2];
-			logger.finest("Found large cover: " + result);
-			return result; 
 		} else {
-			return Movie.UNKNOWN;
+			logger.finest("Found cover: " + cdonPosterURL);
 		}
+		return cdonPosterURL;
 	}
 	
 }
@@ -0,0 +1,203 @@
+/* Filmdelta.se plugin
+ *
+ * Local catalog of filmdelta movies used to find filmdelta ids
+ * without searching google
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.TitleTools;
+
+/**
+ * In memory catalog of filmdelta movies with a trigram index over the
+ * titles, used for fuzzy matching of titles to filmdelta ids.
+ *
+ * The catalog is read from a UTF-8 text file with one movie per line:
+ * id, slug, title and year separated by tabs, e.g.
+ * "15353	den_lilla_sjojungfrun	Den lilla sjöjungfrun	1989".
+ *
+ * The catalog is not changed after it has been read, so it can be
+ * searched from several threads at once.
+ */
+public class FilmdeltaCatalog {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+
+	private static FilmdeltaCatalog sharedCatalog;
+	private static boolean sharedCatalogLoaded = false;
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private final Map<String, int[]> trigramIndex = new HashMap<String, int[]>();
+	private final float minScore;
+
+	private static class Entry {
+		final String filmdeltaId;
+		final String year;
+		final int trigrams;
+
+		Entry(String filmdeltaId, String year, int trigrams) {
+			this.filmdeltaId = filmdeltaId;
+			this.year = year;
+			this.trigrams = trigrams;
+		}
+	}
+
+	/**
+	 * @param minScore lowest similarity (0-1) for a title to count as a match
+	 */
+	public FilmdeltaCatalog(Reader catalog, float minScore) throws IOException {
+		this.minScore = minScore;
+		Map<String, List<Integer>> index = new HashMap<String, List<Integer>>();
+		BufferedReader reader = new BufferedReader(catalog);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] fields = line.split("\t");
+			if (fields.length < 3) {
+				continue;
+			}
+			Set<String> trigrams = trigrams(fields[2]);
+			if (trigrams.isEmpty()) {
+				continue;
+			}
+			String year = fields.length > 3 ? fields[3].trim() : Movie.UNKNOWN;
+			Integer position = Integer.valueOf(entries.size());
+			entries.add(new Entry(fields[0].trim() + "/" + fields[1].trim(), year, trigrams.size()));
+			for (String trigram : trigrams) {
+				List<Integer> positions = index.get(trigram);
+				if (positions == null) {
+					positions = new ArrayList<Integer>();
+					index.put(trigram, positions);
+				}
+				positions.add(position);
+			}
+		}
+		//compact the index to plain arrays
+		for (Map.Entry<String, List<Integer>> trigram : index.entrySet()) {
+			List<Integer> positions = trigram.getValue();
+			int[] compact = new int[positions.size()];
+			for (int i = 0; i < compact.length; i++) {
+				compact[i] = positions.get(i).intValue();
+			}
+			trigramIndex.put(trigram.getKey(), compact);
+		}
+	}
+
+	/**
+	 * The catalog read from the file set by filmdelta.catalog.file, null
+	 * if no catalog is configured or it could not be read
+	 */
+	public static synchronized FilmdeltaCatalog getSharedCatalog() {
+		if (!sharedCatalogLoaded) {
+			sharedCatalogLoaded = true;
+			String fileName = PropertiesUtil.getProperty("filmdelta.catalog.file", "");
+			if (fileName.length() > 0) {
+				File file = new File(fileName);
+				float minScore = Float.parseFloat(PropertiesUtil.getProperty("filmdelta.catalog.minscore", "0.8"));
+				Reader reader = null;
+				try {
+					reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+					sharedCatalog = new FilmdeltaCatalog(reader, minScore);
+					logger.finest("FilmdeltaCatalog: read " + sharedCatalog.size() + " movies from " + file);
+				} catch (IOException e) {
+					logger.severe("FilmdeltaCatalog: failed reading " + file + " : " + e.getMessage());
+				} finally {
+					if (reader != null) {
+						try {
+							reader.close();
+						} catch (IOException e) {
+							//ignore
+						}
+					}
+				}
+			}
+		}
+		return sharedCatalog;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * The filmdelta id (&lt;digits&gt;/&lt;slug&gt;) of the catalog movie that
+	 * best matches title and year, or Movie.UNKNOWN if no movie is similar
+	 * enough
+	 */
+	public String findFilmdeltaId(String title, String year) {
+		Set<String> trigrams = trigrams(title);
+		if (trigrams.isEmpty()) {
+			return Movie.UNKNOWN;
+		}
+		//count the trigrams each catalog movie shares with the title
+		Map<Integer, int[]> shared = new HashMap<Integer, int[]>();
+		for (String trigram : trigrams) {
+			int[] positions = trigramIndex.get(trigram);
+			if (positions == null) {
+				continue;
+			}
+			for (int position : positions) {
+				Integer key = Integer.valueOf(position);
+				int[] count = shared.get(key);
+				if (count == null) {
+					shared.put(key, new int[] {1});
+				} else {
+					count[0]++;
+				}
+			}
+		}
+
+		boolean knownYear = year != null && !year.equalsIgnoreCase(Movie.UNKNOWN) && year.length() > 0;
+		Entry best = null;
+		float bestScore = 0;
+		for (Map.Entry<Integer, int[]> candidate : shared.entrySet()) {
+			Entry entry = entries.get(candidate.getKey().intValue());
+			//dice coefficient of the two trigram sets
+			float score = 2f * candidate.getValue()[0] / (trigrams.size() + entry.trigrams);
+			if (knownYear && !entry.year.equalsIgnoreCase(Movie.UNKNOWN)) {
+				score += entry.year.equals(year) ? 0.1f : -0.2f;
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				best = entry;
+			}
+		}
+		if (best == null || bestScore < minScore) {
+			return Movie.UNKNOWN;
+		}
+		return best.filmdeltaId;
+	}
+
+	/*
+	 * Trigrams of the normalized title, padded so that the start and the
+	 * end of the title get trigrams of their own
+	 */
+	static Set<String> trigrams(String title) {
+		Set<String> trigrams = new HashSet<String>();
+		String normalized = TitleTools.normalize(title);
+		if (normalized.length() == 0) {
+			return trigrams;
+		}
+		String padded = "  " + normalized + " ";
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			trigrams.add(padded.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+}
@@ -0,0 +1,86 @@
+/* Filmdelta.se plugin
+ *
+ * The filmdelta plugin properties, read once
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import com.moviejukebox.tools.PropertiesUtil;
+
+/**
+ * The properties that decide how a movie is scanned, read and parsed the
+ * first time a plugin is created and shared by all plugin instances.
+ */
+public final class FilmdeltaConfig {
+
+	private static FilmdeltaConfig sharedConfig;
+
+	private final int plotMaxLength;
+	private final String rating;
+	private final boolean cdonPoster;
+	private final long scanDeadline;
+	private final double filmdeltaShare;
+
+	FilmdeltaConfig(int plotMaxLength, String rating, boolean cdonPoster, long scanDeadline, double filmdeltaShare) {
+		this.plotMaxLength = plotMaxLength;
+		this.rating = rating;
+		this.cdonPoster = cdonPoster;
+		this.scanDeadline = scanDeadline;
+		this.filmdeltaShare = filmdeltaShare;
+	}
+
+	public static synchronized FilmdeltaConfig getSharedConfig() {
+		if (sharedConfig == null) {
+			sharedConfig = new FilmdeltaConfig(
+				Integer.parseInt(PropertiesUtil.getProperty("filmdelta.plot.maxlength", "400")),
+				PropertiesUtil.getProperty("filmdelta.rating", "filmdelta"),
+				PropertiesUtil.getProperty("filmdelta.getcdonposter", "true").equalsIgnoreCase("true"),
+				Long.parseLong(PropertiesUtil.getProperty("filmdelta.scan.deadline", "0")),
+				Double.parseDouble(PropertiesUtil.getProperty("filmdelta.scan.deadline.filmdelta", "80")) / 100);
+		}
+		return sharedConfig;
+	}
+
+	/**
+	 * filmdelta.plot.maxlength, longer plots are cut
+	 */
+	public int getPlotMaxLength() {
+		return plotMaxLength;
+	}
+
+	/**
+	 * filmdelta.rating, "filmdelta", "average" or anything else for the
+	 * imdb rating
+	 */
+	public String getRating() {
+		return rating;
+	}
+
+	/**
+	 * filmdelta.getcdonposter
+	 */
+	public boolean isCdonPoster() {
+		return cdonPoster;
+	}
+
+	/**
+	 * filmdelta.scan.deadline, milliseconds a scan may take before the
+	 * filmdelta and CDON lookups still running are given up, 0 (the
+	 * default) for no deadline. The time starts when the filmdelta lookup
+	 * starts running. The imdb and tvdb scans and the CDON search with the
+	 * final title are not bounded by it.
+	 */
+	public long getScanDeadline() {
+		return scanDeadline;
+	}
+
+	/**
+	 * filmdelta.scan.deadline.filmdelta, the share of the scan deadline
+	 * (in percent in the property) after which the filmdelta lookup is
+	 * given up, the rest is left for the CDON poster
+	 */
+	public double getFilmdeltaShare() {
+		return filmdeltaShare;
+	}
+}
@@ -0,0 +1,90 @@
+/* Filmdelta.se plugin
+ *
+ * Persistent index of filmdelta ids found for movie titles
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.io.File;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.Metrics;
+import com.moviejukebox.tools.Metrics.Outcome;
+import com.moviejukebox.tools.PropertiesStore;
+import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.TitleTools;
+
+/**
+ * Remembers which filmdelta id belongs to a title, year (and season for
+ * tv shows), so the google search in getFilmdeltaId only has to be done
+ * once per movie. Ids found with google or in NFO files are added to the
+ * index, and it is saved to a properties file between runs.
+ */
+public class FilmdeltaIdIndex {
+
+	private static FilmdeltaIdIndex sharedIndex;
+
+	private final PropertiesStore ids;
+
+	/**
+	 * @param file file to keep the index in, null for an index that is
+	 * only kept in memory
+	 */
+	public FilmdeltaIdIndex(File file) {
+		ids = new PropertiesStore(file, "filmdelta ids by title|year|season");
+	}
+
+	/**
+	 * The index shared by all plugin instances, saved to the file set by
+	 * filmdelta.idindex.file
+	 */
+	public static synchronized FilmdeltaIdIndex getSharedIndex() {
+		if (sharedIndex == null) {
+			sharedIndex = new FilmdeltaIdIndex(new File(PropertiesUtil.getProperty("filmdelta.idindex.file", "cache/filmdelta/ids.properties")));
+			sharedIndex.ids.saveOnExit();
+		}
+		return sharedIndex;
+	}
+
+	/**
+	 * The filmdelta id for the title or Movie.UNKNOWN if the title is not
+	 * in the index
+	 */
+	public String get(String title, String year, int season) {
+		String filmdeltaId = ids.get(makeKey(title, year, season));
+		Metrics.getShared().count(Metrics.ID_INDEX, filmdeltaId == null ? Outcome.MISS : Outcome.SUCCESS);
+		return filmdeltaId == null ? Movie.UNKNOWN : filmdeltaId;
+	}
+
+	public void put(String title, String year, int season, String filmdeltaId) {
+		if (title == null || title.equalsIgnoreCase(Movie.UNKNOWN) || filmdeltaId.equalsIgnoreCase(Movie.UNKNOWN)) {
+			return;
+		}
+		ids.put(makeKey(title, year, season), filmdeltaId);
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	public void save() {
+		ids.save();
+	}
+
+	/*
+	 * Key is normalized title, year and season, season is left out
+	 * for movies
+	 */
+	static String makeKey(String title, String year, int season) {
+		StringBuffer key = new StringBuffer(TitleTools.normalize(title));
+		key.append('|');
+		if (year != null && !year.equalsIgnoreCase(Movie.UNKNOWN)) {
+			key.append(year);
+		}
+		if (season > 0) {
+			key.append('|').append(season);
+		}
+		return key.toString();
+	}
+}
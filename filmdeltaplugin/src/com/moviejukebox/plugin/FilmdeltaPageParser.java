@@ -0,0 +1,212 @@
+/* Filmdelta.se plugin
+ *
+ * Single pass parser for filmdelta.se movie pages
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.HTMLTools;
+import com.moviejukebox.tools.StringPool;
+
+/**
+ * Parses a filmdelta.se movie page into a FilmdeltaRecord.
+ *
+ * The page is walked once from start to end, tag by tag. Each section
+ * that holds movie data is recognized when the walk reaches it and its
+ * values are read from the section itself, so no part of the page is
+ * scanned more than once.
+ */
+public final class FilmdeltaPageParser {
+
+	private static final String TITLE_TAG = "<title>";
+	private static final String PLOT_TAG = "<div class=\"text\">";
+	private static final String HEADING_TAG = "<h4>";
+	private static final String HEADING_END = "</h4>";
+	private static final String SECTION_END = "</div>";
+	private static final String ITEM_TAG = "<h5>";
+	private static final String RATING_TAG = "<span class='block' style=\"margin-top:2px; font-weight:bold;\">";
+
+	//headings of the "Fakta om filmen" sections
+	private static final String ORIGINAL_TITLE = "Originaltitel" + HEADING_END;
+	private static final String COUNTRY_YEAR_RUNTIME = "Land, &aring;r, l&auml;ngd" + HEADING_END;
+	private static final String GENRE = "Genre" + HEADING_END;
+	private static final String DIRECTOR = "Regiss&ouml;r" + HEADING_END;
+	private static final String CAST = "Sk&aring;despelare" + HEADING_END;
+
+	private FilmdeltaPageParser() {
+	}
+
+	public static FilmdeltaRecord parse(String html) {
+		String title = Movie.UNKNOWN;
+		String originalTitle = Movie.UNKNOWN;
+		String plot = Movie.UNKNOWN;
+		List<String> genres = new ArrayList<String>();
+		List<String> directors = new ArrayList<String>();
+		List<String> cast = new ArrayList<String>();
+		String country = Movie.UNKNOWN;
+		String year = Movie.UNKNOWN;
+		String runtime = Movie.UNKNOWN;
+		int rating = -1;
+		int ratingCount = 0;
+
+		int length = html.length();
+		int pos = html.indexOf('<');
+		while (pos != -1) {
+			int next = pos + 1;
+			if (html.startsWith(HEADING_TAG, pos)) {
+				int heading = pos + HEADING_TAG.length();
+				int end = html.indexOf(SECTION_END, heading);
+				if (end == -1) {
+					end = length;
+				}
+				if (html.startsWith(ORIGINAL_TITLE, heading)) {
+					originalTitle = text(html, heading + ORIGINAL_TITLE.length(), end);
+					next = end;
+				} else if (html.startsWith(COUNTRY_YEAR_RUNTIME, heading)) {
+					//the section reads "<country><a> år <year></a>, <runtime> min"
+					int start = nextText(html, heading + COUNTRY_YEAR_RUNTIME.length(), end);
+					country = text(html, start, end);
+					start = nextText(html, endOfText(html, start, end), end);
+					year = word(text(html, start, end), 1, 2);
+					start = nextText(html, endOfText(html, start, end), end);
+					runtime = word(text(html, start, end), 1, 3);
+					next = end;
+				} else if (html.startsWith(GENRE, heading)) {
+					items(html, heading + GENRE.length(), end, genres, StringPool.getGenres());
+					next = end;
+				} else if (html.startsWith(DIRECTOR, heading)) {
+					items(html, heading + DIRECTOR.length(), end, directors, StringPool.getPeople());
+					next = end;
+				} else if (html.startsWith(CAST, heading)) {
+					items(html, heading + CAST.length(), end, cast, StringPool.getPeople());
+					next = end;
+				}
+			} else if (html.startsWith(RATING_TAG, pos)) {
+				//as with the old extractTag lookup the members average
+				//is the second rating on the page
+				ratingCount++;
+				int start = pos + RATING_TAG.length();
+				if (ratingCount == 2) {
+					rating = parseRating(text(html, start, length));
+				}
+				next = start;
+			} else if (title.equals(Movie.UNKNOWN) && html.startsWith(TITLE_TAG, pos)) {
+				int start = pos + TITLE_TAG.length();
+				title = parseTitle(text(html, start, length));
+				next = start;
+			} else if (plot.equals(Movie.UNKNOWN) && html.startsWith(PLOT_TAG, pos)) {
+				int start = pos + PLOT_TAG.length();
+				plot = text(html, start, length);
+				next = start;
+			}
+			pos = html.indexOf('<', next);
+		}
+		return new FilmdeltaRecord(title, originalTitle, plot, genres, directors, cast,
+				country, year, rating, runtime);
+	}
+
+	/*
+	 * Page title looks like "<movie title> - Filmdelta - Filmdatabas på svenska"
+	 */
+	private static String parseTitle(String pageTitle) {
+		if (pageTitle.equals(Movie.UNKNOWN)) {
+			return pageTitle;
+		}
+		int end = pageTitle.indexOf("- Filmdelta");
+		if (end != -1) {
+			pageTitle = pageTitle.substring(0, end).trim();
+		}
+		return pageTitle.length() > 0 ? pageTitle : Movie.UNKNOWN;
+	}
+
+	/*
+	 * Rating looks like "Snitt: 3.8"
+	 */
+	private static int parseRating(String rating) {
+		if (rating.indexOf("Snitt") == -1) {
+			return -1;
+		}
+		try {
+			//multiply by 20 to make comparable to IMDB-ratings
+			int newRating = (int) (Float.parseFloat(rating.substring(rating.lastIndexOf(':') + 1)) * 20);
+			return newRating > 0 ? newRating : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Add the first text of each <h5> item between from and end to the
+	 * list, as the copy kept in pool
+	 */
+	private static void items(String html, int from, int end, List<String> result, StringPool pool) {
+		int pos = html.indexOf(ITEM_TAG, from);
+		while (pos != -1 && pos < end) {
+			String item = text(html, pos + ITEM_TAG.length(), end);
+			if (!item.equals(Movie.UNKNOWN)) {
+				result.add(pool.intern(item));
+			}
+			pos = html.indexOf(ITEM_TAG, pos + ITEM_TAG.length());
+		}
+	}
+
+	/*
+	 * Index of the first non blank character outside of a tag between from
+	 * and end, or end if there is no such text
+	 */
+	private static int nextText(String html, int from, int end) {
+		int pos = from;
+		while (pos < end) {
+			char c = html.charAt(pos);
+			if (c == '<') {
+				int close = html.indexOf('>', pos);
+				if (close == -1 || close >= end) {
+					return end;
+				}
+				pos = close + 1;
+			} else if (Character.isWhitespace(c)) {
+				pos++;
+			} else {
+				return pos;
+			}
+		}
+		return end;
+	}
+
+	private static int endOfText(String html, int start, int end) {
+		int tag = html.indexOf('<', start);
+		return (tag == -1 || tag > end) ? end : tag;
+	}
+
+	/*
+	 * The first text found between from and end, trimmed and html decoded
+	 */
+	private static String text(String html, int from, int end) {
+		int start = nextText(html, from, end);
+		if (start >= end) {
+			return Movie.UNKNOWN;
+		}
+		int stop = endOfText(html, start, end);
+		while (stop > start && Character.isWhitespace(html.charAt(stop - 1))) {
+			stop--;
+		}
+		return HTMLTools.decodeHtml(html.substring(start, stop));
+	}
+
+	/*
+	 * Word at index in a whitespace separated string that has at least
+	 * minWords words
+	 */
+	private static String word(String text, int index, int minWords) {
+		if (text.equals(Movie.UNKNOWN)) {
+			return text;
+		}
+		String[] words = text.split("\\s");
+		return words.length >= minWords ? words[index] : Movie.UNKNOWN;
+	}
+}
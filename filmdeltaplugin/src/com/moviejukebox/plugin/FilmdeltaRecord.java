@@ -0,0 +1,100 @@
+/* Filmdelta.se plugin
+ *
+ * Immutable holder for the movie data scraped from a filmdelta.se
+ * movie page
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The values found on one filmdelta.se movie page. Fields that could not
+ * be found on the page are set to Movie.UNKNOWN (strings), an empty list
+ * (genres, directors, cast) or -1 (rating).
+ *
+ * Created by FilmdeltaPageParser and applied to a Movie by FilmDeltaSEPlugin.
+ */
+public final class FilmdeltaRecord {
+
+	private final String title;
+	private final String originalTitle;
+	private final String plot;
+	private final List<String> genres;
+	private final List<String> directors;
+	private final List<String> cast;
+	private final String country;
+	private final String year;
+	private final int rating;
+	private final String runtime;
+
+	FilmdeltaRecord(String title, String originalTitle, String plot,
+			List<String> genres, List<String> directors, List<String> cast,
+			String country, String year, int rating, String runtime) {
+		this.title = title;
+		this.originalTitle = originalTitle;
+		this.plot = plot;
+		this.genres = Collections.unmodifiableList(new ArrayList<String>(genres));
+		this.directors = Collections.unmodifiableList(new ArrayList<String>(directors));
+		this.cast = Collections.unmodifiableList(new ArrayList<String>(cast));
+		this.country = country;
+		this.year = year;
+		this.rating = rating;
+		this.runtime = runtime;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getOriginalTitle() {
+		return originalTitle;
+	}
+
+	public String getPlot() {
+		return plot;
+	}
+
+	public List<String> getGenres() {
+		return genres;
+	}
+
+	public List<String> getDirectors() {
+		return directors;
+	}
+
+	public List<String> getCast() {
+		return cast;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	public String getYear() {
+		return year;
+	}
+
+	/*
+	 * Filmdelta rating multiplied by 20 to make it comparable to
+	 * IMDB-ratings, -1 if the page had no rating
+	 */
+	public int getRating() {
+		return rating;
+	}
+
+	public String getRuntime() {
+		return runtime;
+	}
+
+	@Override
+	public String toString() {
+		return "FilmdeltaRecord[title=" + title + ", originalTitle=" + originalTitle
+			+ ", year=" + year + ", country=" + country + ", runtime=" + runtime
+			+ ", rating=" + rating + ", genres=" + genres + ", directors=" + directors
+			+ ", cast=" + cast + "]";
+	}
+}
@@ -0,0 +1,190 @@
+/* Filmdelta.se plugin
+ *
+ * Keeps the data parsed from filmdelta pages between runs
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.moviejukebox.tools.PropertiesStore;
+import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.StringPool;
+
+/**
+ * The FilmdeltaRecord last parsed for each filmdelta id, with the
+ * fingerprint of the page it was parsed from. When the page of a movie has
+ * not changed since it was parsed, the stored record is used instead of
+ * parsing the page again.
+ *
+ * The imdb rating of each movie is kept next to the records, in
+ * imdbratings.properties in the same directory, for the average of the
+ * filmdelta and imdb ratings.
+ */
+public class FilmdeltaRecordStore {
+
+	//separators that don't occur in the scraped html text
+	private static final char FIELD_SEPARATOR = '\u001F';
+	private static final char ITEM_SEPARATOR = '\u001E';
+	private static final int FIELDS = 10;
+
+	private static FilmdeltaRecordStore sharedStore;
+
+	private final PropertiesStore records;
+	private final PropertiesStore imdbRatings;
+
+	/**
+	 * @param file file to keep the records in, null to keep them in memory
+	 * only
+	 */
+	public FilmdeltaRecordStore(File file) {
+		records = new PropertiesStore(file, "parsed filmdelta pages by filmdelta id");
+		imdbRatings = new PropertiesStore(file == null ? null : new File(file.getAbsoluteFile().getParentFile(), "imdbratings.properties"),
+			"imdb ratings by filmdelta id");
+	}
+
+	/**
+	 * The store shared by all plugin instances, saved to the file set by
+	 * filmdelta.recordstore.file
+	 */
+	public static synchronized FilmdeltaRecordStore getSharedStore() {
+		if (sharedStore == null) {
+			sharedStore = new FilmdeltaRecordStore(new File(PropertiesUtil.getProperty("filmdelta.recordstore.file", "cache/filmdelta/records.properties")));
+			sharedStore.records.saveOnExit();
+			sharedStore.imdbRatings.saveOnExit();
+		}
+		return sharedStore;
+	}
+
+	/**
+	 * The record stored for the filmdelta id, null if there is none
+	 */
+	public FilmdeltaRecord get(String filmdeltaId) {
+		String value = records.get(filmdeltaId);
+		if (value == null) {
+			return null;
+		}
+		String[] fields = split(value, FIELD_SEPARATOR);
+		//records stored before fingerprints were kept have no fingerprint
+		if (fields.length != FIELDS && fields.length != FIELDS + 1) {
+			return null;
+		}
+		try {
+			return new FilmdeltaRecord(fields[0], fields[1], fields[2],
+				items(fields[3], StringPool.getGenres()), items(fields[4], StringPool.getPeople()), items(fields[5], StringPool.getPeople()),
+				fields[6], fields[7], Integer.parseInt(fields[8]), fields[9]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Fingerprint of the page the stored record was parsed from, null if
+	 * there is none
+	 */
+	public String getFingerprint(String filmdeltaId) {
+		String value = records.get(filmdeltaId);
+		if (value == null) {
+			return null;
+		}
+		String[] fields = split(value, FIELD_SEPARATOR);
+		return fields.length == FIELDS + 1 ? fields[FIELDS] : null;
+	}
+
+	public void put(String filmdeltaId, FilmdeltaRecord record) {
+		put(filmdeltaId, record, null);
+	}
+
+	/**
+	 * @param fingerprint fingerprint of the page the record was parsed
+	 * from, null if unknown
+	 */
+	public void put(String filmdeltaId, FilmdeltaRecord record, String fingerprint) {
+		StringBuilder sb = new StringBuilder(512);
+		sb.append(record.getTitle()).append(FIELD_SEPARATOR);
+		sb.append(record.getOriginalTitle()).append(FIELD_SEPARATOR);
+		sb.append(record.getPlot()).append(FIELD_SEPARATOR);
+		join(sb, record.getGenres()).append(FIELD_SEPARATOR);
+		join(sb, record.getDirectors()).append(FIELD_SEPARATOR);
+		join(sb, record.getCast()).append(FIELD_SEPARATOR);
+		sb.append(record.getCountry()).append(FIELD_SEPARATOR);
+		sb.append(record.getYear()).append(FIELD_SEPARATOR);
+		sb.append(record.getRating()).append(FIELD_SEPARATOR);
+		sb.append(record.getRuntime());
+		if (fingerprint != null) {
+			sb.append(FIELD_SEPARATOR).append(fingerprint);
+		}
+		records.put(filmdeltaId, sb.toString());
+	}
+
+	/**
+	 * The imdb rating last scanned for the movie with the filmdelta id, -1
+	 * if there is none
+	 */
+	public int getImdbRating(String filmdeltaId) {
+		String value = filmdeltaId == null ? null : imdbRatings.get(filmdeltaId);
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public void putImdbRating(String filmdeltaId, int rating) {
+		imdbRatings.put(filmdeltaId, String.valueOf(rating));
+	}
+
+	public int size() {
+		return records.size();
+	}
+
+	public void save() {
+		records.save();
+		imdbRatings.save();
+	}
+
+	private static StringBuilder join(StringBuilder sb, List<String> items) {
+		for (int i = 0; i < items.size(); i++) {
+			if (i > 0) {
+				sb.append(ITEM_SEPARATOR);
+			}
+			sb.append(items.get(i));
+		}
+		return sb;
+	}
+
+	/*
+	 * The items of a list field, as the copies kept in pool
+	 */
+	private static List<String> items(String field, StringPool pool) {
+		List<String> items = new ArrayList<String>();
+		if (field.length() == 0) {
+			return items;
+		}
+		for (String item : split(field, ITEM_SEPARATOR)) {
+			items.add(pool.intern(item));
+		}
+		return items;
+	}
+
+	/*
+	 * Split on a single character, keeping empty fields
+	 */
+	private static String[] split(String value, char separator) {
+		List<String> parts = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while ((end = value.indexOf(separator, start)) != -1) {
+			parts.add(value.substring(start, end));
+			start = end + 1;
+		}
+		parts.add(value.substring(start));
+		return parts.toArray(new String[parts.size()]);
+	}
+}
@@ -0,0 +1,163 @@
+/* Filmdelta.se plugin
+ *
+ * Finds the imdb, filmdelta and cdon ids in an nfo file
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import com.moviejukebox.tools.MultiPatternMatcher;
+
+/**
+ * The ids found in one nfo file. All url shapes are looked for in a
+ * single pass over the nfo and only the ids themselves are copied out of
+ * it. Ids that are not in the nfo are null.
+ */
+public final class NfoIds {
+
+	private static final int IMDB = 0;
+	private static final int IMDB_TITLE = 1;
+	private static final int FILMDELTA = 2;
+	private static final int FILMDELTA_PREVSEARCH = 3;
+	private static final int CDON = 4;
+
+	private static final MultiPatternMatcher MATCHER = new MultiPatternMatcher(
+		"/tt",
+		"/Title?",
+		"www.filmdelta.se/filmer/",
+		"www.filmdelta.se/prevsearch/",
+		"cdon.se/film/");
+
+	private final String imdbId;
+	private final String filmdeltaId;
+	private final String cdonUrl;
+
+	private NfoIds(String imdbId, String filmdeltaId, String cdonUrl) {
+		this.imdbId = imdbId;
+		this.filmdeltaId = filmdeltaId;
+		this.cdonUrl = cdonUrl;
+	}
+
+	public static NfoIds scan(String nfo) {
+		int[] found = MATCHER.findFirst(nfo);
+
+		//imdb urls look like .../title/tt0097757/ or .../Title?0097757
+		String imdbId = null;
+		if (found[IMDB] != -1) {
+			imdbId = word(nfo, found[IMDB] - 2);
+		} else if (found[IMDB_TITLE] != -1) {
+			String number = word(nfo, found[IMDB_TITLE]);
+			imdbId = number == null ? null : "tt" + number;
+		}
+
+		//the prevsearch form ends with /filmer/<id>/<name>, which is
+		//skipped past in the same way as makeFilmDeltaId does
+		String filmdeltaId = null;
+		if (found[FILMDELTA_PREVSEARCH] != -1) {
+			filmdeltaId = filmdeltaId(nfo, found[FILMDELTA_PREVSEARCH], 2);
+		} else if (found[FILMDELTA] != -1) {
+			filmdeltaId = filmdeltaId(nfo, found[FILMDELTA], 0);
+		}
+
+		String cdonUrl = null;
+		if (found[CDON] != -1) {
+			int end = endOfUrl(nfo, found[CDON]);
+			if (end > found[CDON]) {
+				cdonUrl = "http://" + nfo.substring(found[CDON] - "cdon.se/film/".length(), end);
+			}
+		}
+		return new NfoIds(imdbId, filmdeltaId, cdonUrl);
+	}
+
+	/**
+	 * e.g. tt0097757, null if there is none
+	 */
+	public String getImdbId() {
+		return imdbId;
+	}
+
+	/**
+	 * e.g. 15353/den_lilla_sjojungfrun, null if there is none
+	 */
+	public String getFilmdeltaId() {
+		return filmdeltaId;
+	}
+
+	/**
+	 * Url of the cdon product page, e.g. http://cdon.se/film/mora_trask-406535,
+	 * null if there is none
+	 */
+	public String getCdonUrl() {
+		return cdonUrl;
+	}
+
+	/*
+	 * The letters and digits starting at start, null if there are none
+	 */
+	private static String word(String nfo, int start) {
+		int end = start;
+		while (end < nfo.length() && Character.isLetterOrDigit(nfo.charAt(end))) {
+			end++;
+		}
+		return end > start ? nfo.substring(start, end) : null;
+	}
+
+	/*
+	 * Skip skip parts of the path starting at start, then take the next
+	 * two parts as <digits>/<name>. Parts are separated by '/' and end at
+	 * whitespace.
+	 */
+	static String filmdeltaId(String nfo, int start, int skip) {
+		int[] part = new int[2];
+		int pos = start;
+		for (int i = 0; i < skip; i++) {
+			if (!nextPart(nfo, pos, part)) {
+				return null;
+			}
+			pos = part[1];
+		}
+		if (!nextPart(nfo, pos, part)) {
+			return null;
+		}
+		int numberStart = part[0];
+		int numberEnd = part[1];
+		if (!nextPart(nfo, numberEnd, part)) {
+			return null;
+		}
+		return new StringBuilder(part[1] - numberStart)
+			.append(nfo, numberStart, numberEnd).append('/').append(nfo, part[0], part[1]).toString();
+	}
+
+	/*
+	 * Finds the next non empty part of the path from pos, its start and
+	 * end are put in part. False if the path has no more parts.
+	 */
+	private static boolean nextPart(String nfo, int pos, int[] part) {
+		int length = nfo.length();
+		while (pos < length && nfo.charAt(pos) == '/') {
+			pos++;
+		}
+		int end = pos;
+		while (end < length && nfo.charAt(end) != '/' && !Character.isWhitespace(nfo.charAt(end))) {
+			end++;
+		}
+		if (end == pos) {
+			return false;
+		}
+		part[0] = pos;
+		part[1] = end;
+		return true;
+	}
+
+	private static int endOfUrl(String nfo, int start) {
+		int end = start;
+		while (end < nfo.length()) {
+			char c = nfo.charAt(end);
+			if (Character.isWhitespace(c) || c == '"' || c == '<' || c == '>' || c == '\'') {
+				break;
+			}
+			end++;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,148 @@
+/* Filmdelta.se plugin
+ *
+ * Filmdelta pages saved in a directory or a zip archive
+ *
+ */
+
+package com.moviejukebox.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.PropertiesUtil;
+
+/**
+ * Saved filmdelta movie pages, named by filmdelta id. A page is found by
+ * its path in the directory or archive, either as on the site
+ * (15353/den_lilla_sjojungfrun.html) or flat with the first '/' of the id
+ * written as '_' (15353_den_lilla_sjojungfrun.html). Files with other names
+ * are skipped.
+ *
+ * Pages are read with filmdelta.import.encoding (UTF-8 by default). The
+ * pages can be read from several threads at once.
+ *
+ * Run as a program it imports the pages into the record store of the
+ * plugin: SavedFilmdeltaPages &lt;directory or zip&gt;
+ */
+public class SavedFilmdeltaPages {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+	//<digits>, '/' or '_', name (may hold entities like &#246;), ".htm" or
+	//".html", at the end of the path
+	private static final Pattern PAGE_NAME = Pattern.compile("(?:^|/)(\\d{3,})[/_]([\\w-&;#]+)\\.html?$");
+
+	private final ZipFile archive;
+	//the file or zip entry of each page by filmdelta id
+	private final Map<String, Object> pages = new TreeMap<String, Object>();
+	private final String encoding = PropertiesUtil.getProperty("filmdelta.import.encoding", "UTF-8");
+
+	/**
+	 * @param source directory or zip file with the pages
+	 */
+	public SavedFilmdeltaPages(File source) throws IOException {
+		if (source.isDirectory()) {
+			archive = null;
+			addFiles(source, "");
+		} else {
+			archive = new ZipFile(source);
+			Enumeration<? extends ZipEntry> entries = archive.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String id = entry.isDirectory() ? null : makeFilmdeltaId(entry.getName());
+				if (id != null) {
+					pages.put(id, entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The filmdelta id of a page path, null if the path is not named by id
+	 */
+	static String makeFilmdeltaId(String path) {
+		Matcher matcher = PAGE_NAME.matcher(path.replace('\\', '/'));
+		return matcher.find() ? matcher.group(1) + "/" + matcher.group(2) : null;
+	}
+
+	private void addFiles(File dir, String path) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				addFiles(file, path + file.getName() + "/");
+			} else {
+				String id = makeFilmdeltaId(path + file.getName());
+				if (id != null) {
+					pages.put(id, file);
+				}
+			}
+		}
+	}
+
+	public List<String> getFilmdeltaIds() {
+		return Collections.unmodifiableList(new ArrayList<String>(pages.keySet()));
+	}
+
+	/**
+	 * The saved page, Movie.UNKNOWN if there is none for the id
+	 */
+	public String read(String filmdeltaId) throws IOException {
+		Object page = pages.get(filmdeltaId);
+		if (page == null) {
+			return Movie.UNKNOWN;
+		}
+		InputStream in = page instanceof File ? new FileInputStream((File) page) : archive.getInputStream((ZipEntry) page);
+		try {
+			Reader reader = new InputStreamReader(in, encoding);
+			StringBuilder sb = new StringBuilder(32768);
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				sb.append(buffer, 0, count);
+			}
+			return sb.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	public void close() {
+		if (archive != null) {
+			try {
+				archive.close();
+			} catch (IOException e) {
+				//ignore
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: SavedFilmdeltaPages <directory or zip with filmdelta pages>");
+			System.exit(1);
+		}
+		FilmDeltaSEPlugin plugin = new FilmDeltaSEPlugin();
+		long start = System.currentTimeMillis();
+		int imported = plugin.importFilmdeltaPages(new File(args[0]), new ArrayList<Movie>());
+		plugin.recordStore.save();
+		logger.info("Imported " + imported + " filmdelta pages in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
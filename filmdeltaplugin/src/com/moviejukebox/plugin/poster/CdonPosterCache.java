@@ -0,0 +1,138 @@
+/* Filmdelta.se plugin
+ *
+ * Cache of CDON poster lookups shared by the filmdelta and cdon plugins
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+import java.io.File;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.Metrics;
+import com.moviejukebox.tools.Metrics.Outcome;
+import com.moviejukebox.tools.PropertiesStore;
+import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.TitleTools;
+
+/**
+ * Remembers the result of CDON poster searches by normalized title and
+ * season: the poster url and the CDON movie page it was found on when one
+ * was found, and the fact that CDON has no cover when it wasn't. Found posters are kept for
+ * filmdelta.cdoncache.ttl hours and misses for filmdelta.cdoncache.missttl
+ * hours, so titles CDON doesn't carry are searched again now and then.
+ *
+ * Only store misses for searches that actually completed, a failed
+ * request says nothing about what CDON carries.
+ */
+public class CdonPosterCache {
+
+	private static final long HOUR = 60L * 60L * 1000L;
+
+	private static CdonPosterCache sharedCache;
+
+	private final PropertiesStore posters;
+	private final long hitTtl;
+	private final long missTtl;
+
+	/**
+	 * @param file file to keep the cache in, null for a cache that is
+	 * only kept in memory
+	 */
+	public CdonPosterCache(File file) {
+		posters = new PropertiesStore(file, "cdon poster urls by title|season, value is store time|url|cdon url");
+		hitTtl = Long.parseLong(PropertiesUtil.getProperty("filmdelta.cdoncache.ttl", "720")) * HOUR;
+		missTtl = Long.parseLong(PropertiesUtil.getProperty("filmdelta.cdoncache.missttl", "168")) * HOUR;
+	}
+
+	/**
+	 * The cache shared by the filmdelta and cdon plugins, saved to the file
+	 * set by filmdelta.cdoncache.file
+	 */
+	public static synchronized CdonPosterCache getSharedCache() {
+		if (sharedCache == null) {
+			sharedCache = new CdonPosterCache(new File(PropertiesUtil.getProperty("filmdelta.cdoncache.file", "cache/filmdelta/cdonposters.properties")));
+			sharedCache.posters.saveOnExit();
+		}
+		return sharedCache;
+	}
+
+	/**
+	 * The cached poster url, Movie.UNKNOWN if CDON is known to have no
+	 * cover for the title, or null if the title has not been searched or
+	 * the cached result has expired
+	 */
+	public String get(String title, int season) {
+		String[] found = find(title, season);
+		Metrics.getShared().count(Metrics.CDON_CACHE, found == null ? Outcome.MISS : Outcome.SUCCESS);
+		return found == null ? null : found[0];
+	}
+
+	/**
+	 * The CDON movie page of the cached poster, the id of the cdon poster
+	 * plugin. Null if the title has no cached poster or the page is not
+	 * known.
+	 */
+	public String getCdonUrl(String title, int season) {
+		String[] found = find(title, season);
+		return found == null || found[1].equals(Movie.UNKNOWN) ? null : found[1];
+	}
+
+	/*
+	 * Poster url and cdon url of the title, null if not cached or expired.
+	 * Entries stored without a cdon url have Movie.UNKNOWN.
+	 */
+	private String[] find(String title, int season) {
+		String value = posters.get(makeKey(title, season));
+		if (value == null) {
+			return null;
+		}
+		int separator = value.indexOf('|');
+		if (separator == -1) {
+			return null;
+		}
+		try {
+			long stored = Long.parseLong(value.substring(0, separator));
+			String posterUrl = value.substring(separator + 1);
+			String cdonUrl = Movie.UNKNOWN;
+			int urlSeparator = posterUrl.lastIndexOf('|');
+			if (urlSeparator != -1) {
+				cdonUrl = posterUrl.substring(urlSeparator + 1);
+				posterUrl = posterUrl.substring(0, urlSeparator);
+			}
+			long ttl = posterUrl.equals(Movie.UNKNOWN) ? missTtl : hitTtl;
+			if (System.currentTimeMillis() - stored > ttl) {
+				return null;
+			}
+			return new String[] {posterUrl, cdonUrl};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Store the poster url for the title, Movie.UNKNOWN for a search that
+	 * found no cover
+	 *
+	 * @param cdonUrl the CDON movie page the search found, Movie.UNKNOWN
+	 * if it found none
+	 */
+	public void put(String title, int season, String posterUrl, String cdonUrl) {
+		if (title == null || title.equalsIgnoreCase(Movie.UNKNOWN)) {
+			return;
+		}
+		posters.put(makeKey(title, season), System.currentTimeMillis() + "|" + posterUrl + "|" + cdonUrl);
+	}
+
+	public void save() {
+		posters.save();
+	}
+
+	/*
+	 * Key is normalized title and season, season is left out for movies
+	 */
+	static String makeKey(String title, int season) {
+		String key = TitleTools.normalize(title);
+		return season > 0 ? key + "|" + season : key;
+	}
+}
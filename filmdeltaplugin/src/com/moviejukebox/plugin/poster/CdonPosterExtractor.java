@@ -0,0 +1,88 @@
+/* Filmdelta.se plugin
+ *
+ * Finds the cover image on a CDON product page
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.PageMarkers;
+
+/**
+ * Finds the url of the cover image on a CDON product page, used by both
+ * the filmdelta plugin and the cdon poster plugin.
+ *
+ * The page is scanned in place, nothing is allocated except the returned
+ * url.
+ */
+public final class CdonPosterExtractor {
+
+	/** text of the link to the large front cover */
+	static final String LARGE_COVER = "St&#246;rre framsida";
+	/** path of the product images, used when there is no large cover */
+	static final String SMALL_COVER = "/media-dynamic/images/product/";
+
+	private static final String CDON_URL = "http://cdon.se";
+
+	/**
+	 * Where a product page can be cut, the rest of a page with a large
+	 * cover is not needed
+	 */
+	public static final PageMarkers PAGE_MARKERS = new PageMarkers(0, LARGE_COVER);
+
+	private CdonPosterExtractor() {
+	}
+
+	/**
+	 * The url of the large front cover on the page, or of the small cover
+	 * if there is no large one. Movie.UNKNOWN if the page has no cover.
+	 */
+	public static String extractPosterUrl(String cdonMoviePage) {
+		if (cdonMoviePage == null) {
+			return Movie.UNKNOWN;
+		}
+		int marker = cdonMoviePage.indexOf(LARGE_COVER);
+		if (marker < 0) {
+			marker = cdonMoviePage.indexOf(SMALL_COVER);
+			if (marker < 0) {
+				return Movie.UNKNOWN;
+			}
+		}
+		//the tag the marker is in, the image path is the third word of it
+		//(e.g. a href="/media-dynamic/...jpg" or img src="/media-dynamic/...jpg")
+		int tagStart = cdonMoviePage.lastIndexOf('<', marker) + 1;
+		int tagEnd = cdonMoviePage.indexOf('<', marker);
+		if (tagEnd < 0) {
+			tagEnd = cdonMoviePage.length();
+		}
+		int start = tagStart;
+		for (int word = 0; word < 2; word++) {
+			start = endOfWord(cdonMoviePage, start, tagEnd) + 1;
+			if (start > tagEnd) {
+				return Movie.UNKNOWN;
+			}
+		}
+		int end = endOfWord(cdonMoviePage, start, tagEnd);
+		//sanity check, the found url should point to a jpg
+		int jpg = cdonMoviePage.indexOf(".jpg", start);
+		if (jpg < 0 || jpg + 4 > end) {
+			return Movie.UNKNOWN;
+		}
+		return CDON_URL.concat(cdonMoviePage.substring(start, end));
+	}
+
+	/*
+	 * Position of the quote or whitespace ending the word starting at start,
+	 * or end if the word runs to the end of the tag
+	 */
+	private static int endOfWord(String page, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = page.charAt(i);
+			if (c == '"' || Character.isWhitespace(c)) {
+				return i;
+			}
+		}
+		return end;
+	}
+}
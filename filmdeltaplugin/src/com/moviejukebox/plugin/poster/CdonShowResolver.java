@@ -0,0 +1,181 @@
+/* Filmdelta.se plugin
+ *
+ * Finds the CDON product pages of all seasons of a tv show with one search
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.PropertiesStore;
+import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.TitleTools;
+import com.moviejukebox.tools.WebBrowser;
+
+/**
+ * Searches CDON once for a tv show ("&lt;title&gt; säsong") and reads the
+ * product url of every season from the result, instead of searching once
+ * per season. The season to url map of a show is kept for
+ * filmdelta.cdoncache.ttl hours, also when the search found no seasons.
+ *
+ * Seasons the show search didn't find are left to the callers, which can
+ * still search for the season itself.
+ */
+public class CdonShowResolver {
+
+	private static final long HOUR = 60L * 60L * 1000L;
+	private static final String MOVIE_SECTION = "/section-movie.gif\" alt=\"\" />";
+	private static final String TITLE_CELL = "<td class=\"title\">";
+	//"Säsong 3" as CDON writes it in product titles, but not "Säsong 1-3"
+	private static final Pattern SEASON = Pattern.compile("(?i)s(?:&#228;|&auml;|ä|a)song\\s*(\\d+)(?!\\s*-\\s*\\d)");
+
+	private static CdonShowResolver sharedResolver;
+
+	private final PropertiesStore shows;
+	private final long ttl;
+	//show of each product url that has been seen, for going from the url
+	//of one season to another season of the same show
+	private final ConcurrentMap<String, String> showsByUrl = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * @param file file to keep the seasons in, null to keep them in memory
+	 * only
+	 */
+	public CdonShowResolver(File file) {
+		shows = new PropertiesStore(file, "cdon product urls by tv show, value is store time|season=url|...");
+		ttl = Long.parseLong(PropertiesUtil.getProperty("filmdelta.cdoncache.ttl", "720")) * HOUR;
+	}
+
+	/**
+	 * The resolver shared by the filmdelta and cdon plugins, saved to the
+	 * file set by filmdelta.cdonshows.file
+	 */
+	public static synchronized CdonShowResolver getSharedResolver() {
+		if (sharedResolver == null) {
+			sharedResolver = new CdonShowResolver(new File(PropertiesUtil.getProperty("filmdelta.cdonshows.file", "cache/filmdelta/cdonshows.properties")));
+			sharedResolver.shows.saveOnExit();
+		}
+		return sharedResolver;
+	}
+
+	/**
+	 * Url of the product page for a season of the show, Movie.UNKNOWN if
+	 * the show search didn't find the season
+	 */
+	public String getSeasonUrl(WebBrowser browser, String title, int season) throws IOException {
+		String url = getSeasons(browser, title).get(Integer.valueOf(season));
+		return url == null ? Movie.UNKNOWN : url;
+	}
+
+	/**
+	 * Product urls of the seasons of the show by season, searched for if
+	 * the show isn't known or its seasons have expired
+	 */
+	public Map<Integer, String> getSeasons(WebBrowser browser, String title) throws IOException {
+		String key = TitleTools.normalize(title);
+		Map<Integer, String> seasons = find(key);
+		if (seasons == null) {
+			seasons = Collections.unmodifiableMap(parseSeasons(browser.request(makeSearchUrl(title))));
+			put(key, seasons);
+		}
+		return seasons;
+	}
+
+	/**
+	 * Url of another season of the show productUrl belongs to, null if the
+	 * show of productUrl or that season is not known
+	 */
+	public String getOtherSeasonUrl(String productUrl, int season) {
+		String key = showsByUrl.get(productUrl);
+		if (key == null) {
+			return null;
+		}
+		Map<Integer, String> seasons = find(key);
+		return seasons == null ? null : seasons.get(Integer.valueOf(season));
+	}
+
+	/**
+	 * Product url of each season in the movie section of a search result
+	 * page, the first product of a season is used
+	 */
+	static Map<Integer, String> parseSeasons(String searchPage) {
+		Map<Integer, String> seasons = new TreeMap<Integer, String>();
+		int pos = searchPage.indexOf(MOVIE_SECTION);
+		if (pos == -1) {
+			return seasons;
+		}
+		while ((pos = searchPage.indexOf(TITLE_CELL, pos)) != -1) {
+			pos += TITLE_CELL.length();
+			int hrefStart = searchPage.indexOf("href=\"", pos);
+			if (hrefStart == -1) {
+				break;
+			}
+			hrefStart += 6;
+			int hrefEnd = searchPage.indexOf('"', hrefStart);
+			int textStart = hrefEnd == -1 ? -1 : searchPage.indexOf('>', hrefEnd);
+			int textEnd = textStart == -1 ? -1 : searchPage.indexOf("</a>", textStart);
+			if (textEnd == -1) {
+				break;
+			}
+			String url = searchPage.substring(hrefStart, hrefEnd);
+			Matcher matcher = SEASON.matcher(searchPage.substring(textStart + 1, textEnd));
+			if (url.startsWith("http") && matcher.find()) {
+				Integer season = Integer.valueOf(matcher.group(1));
+				if (!seasons.containsKey(season)) {
+					seasons.put(season, url);
+				}
+			}
+			pos = textEnd;
+		}
+		return seasons;
+	}
+
+	static String makeSearchUrl(String title) throws IOException {
+		return "http://cdon.se/search?q=" + URLEncoder.encode(title, "UTF-8") + "+" + URLEncoder.encode("säsong", "UTF-8");
+	}
+
+	private Map<Integer, String> find(String key) {
+		String value = shows.get(key);
+		if (value == null) {
+			return null;
+		}
+		String[] parts = value.split("\\|");
+		try {
+			if (System.currentTimeMillis() - Long.parseLong(parts[0]) > ttl) {
+				return null;
+			}
+			Map<Integer, String> seasons = new TreeMap<Integer, String>();
+			for (int i = 1; i < parts.length; i++) {
+				int separator = parts[i].indexOf('=');
+				String url = parts[i].substring(separator + 1);
+				seasons.put(Integer.valueOf(parts[i].substring(0, separator)), url);
+				showsByUrl.put(url, key);
+			}
+			return Collections.unmodifiableMap(seasons);
+		} catch (RuntimeException e) {
+			//NumberFormatException or a part without '='
+			return null;
+		}
+	}
+
+	private void put(String key, Map<Integer, String> seasons) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(System.currentTimeMillis());
+		for (Map.Entry<Integer, String> season : seasons.entrySet()) {
+			sb.append('|').append(season.getKey()).append('=').append(season.getValue());
+			showsByUrl.put(season.getValue(), key);
+		}
+		shows.put(key, sb.toString());
+	}
+}
@@ -0,0 +1,242 @@
+/* Filmdelta.se plugin
+ *
+ * Downloads found posters in the background into a local image store
+ *
+ */
+
+package com.moviejukebox.plugin.poster;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.moviejukebox.tools.Metrics;
+import com.moviejukebox.tools.Metrics.Outcome;
+import com.moviejukebox.tools.PropertiesStore;
+import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.WebBrowser;
+import com.moviejukebox.tools.WebBrowsers;
+import com.moviejukebox.tools.WebPage;
+
+/**
+ * Queues poster urls found by the filmdelta and cdon plugins and downloads
+ * them with a few background threads, so the posters are on disk before
+ * the jukebox needs them. Nobody waits for a download: the plugins give the
+ * movie the file: url of the stored copy once it is there, see getLocalUrl,
+ * and the remote url until then.
+ *
+ * Posters are downloaded with the browser of the filmdelta and cdon
+ * plugins, and wait for the same rate and connection limits and circuit
+ * breakers as the pages. PooledWebBrowser copies the download from the
+ * connection to the file with FileChannel.transferFrom, without going
+ * through a buffer of our own. Images are stored by the SHA-1 of their
+ * content, the same image found under two urls is stored once. An index
+ * maps each url to its file.
+ *
+ * Turned on with filmdelta.prefetch.enable=true. filmdelta.prefetch.dir is
+ * the store, filmdelta.prefetch.threads the number of downloads at a time
+ * and filmdelta.prefetch.queue the number of posters that can wait. Posters
+ * found while the queue is full are not prefetched.
+ */
+public class PosterPrefetcher {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+	private static final int TRANSFER_SIZE = 64 * 1024;
+
+	private static PosterPrefetcher sharedPrefetcher;
+
+	private final File dir;
+	private final WebBrowser browser;
+	private final PropertiesStore index;
+	private final ThreadPoolExecutor downloader;
+	//urls that are queued or being downloaded
+	private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * @param dir the image store
+	 * @param browser browser the posters are downloaded with
+	 */
+	public PosterPrefetcher(File dir, WebBrowser browser, int threads, int queueSize) {
+		this.dir = dir;
+		this.browser = browser;
+		index = new PropertiesStore(new File(dir, "index.properties"), "poster files by url");
+		downloader = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "filmdelta-poster-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		downloader.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * The prefetcher shared by the filmdelta and cdon plugins, null if
+	 * prefetching is turned off
+	 */
+	public static synchronized PosterPrefetcher getSharedPrefetcher() {
+		if (sharedPrefetcher == null && PropertiesUtil.getProperty("filmdelta.prefetch.enable", "false").equalsIgnoreCase("true")) {
+			File dir = new File(PropertiesUtil.getProperty("filmdelta.prefetch.dir", "cache/filmdelta/posters"));
+			int threads = Math.max(1, Integer.parseInt(PropertiesUtil.getProperty("filmdelta.prefetch.threads", "2")));
+			int queueSize = Math.max(1, Integer.parseInt(PropertiesUtil.getProperty("filmdelta.prefetch.queue", "200")));
+			sharedPrefetcher = new PosterPrefetcher(dir, WebBrowsers.getSharedBrowser(), threads, queueSize);
+			sharedPrefetcher.index.saveOnExit();
+		}
+		return sharedPrefetcher;
+	}
+
+	/**
+	 * Queue the poster for download, false if it is already stored or
+	 * queued, or the queue is full
+	 */
+	public boolean prefetch(final String posterUrl) {
+		if (getFile(posterUrl) != null || pending.putIfAbsent(posterUrl, Boolean.TRUE) != null) {
+			return false;
+		}
+		try {
+			downloader.execute(new Runnable() {
+				public void run() {
+					long start = System.nanoTime();
+					try {
+						download(posterUrl);
+						Metrics.getShared().record(Metrics.POSTER_PREFETCH, start, Outcome.SUCCESS);
+					} catch (IOException e) {
+						Metrics.getShared().record(Metrics.POSTER_PREFETCH, start, Outcome.ERROR);
+						logger.finer("Failed prefetching poster " + posterUrl + " : " + e.getMessage());
+					} finally {
+						pending.remove(posterUrl);
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			pending.remove(posterUrl);
+			logger.finer("Poster prefetch queue is full, skipping " + posterUrl);
+			return false;
+		}
+	}
+
+	/**
+	 * The url to give the movie for the poster: the file: url of the stored
+	 * copy, or posterUrl itself while the poster isn't stored. A poster that
+	 * isn't stored is queued, without waiting for it, so the next scan of
+	 * the movie finds it.
+	 */
+	public String getLocalUrl(String posterUrl) {
+		File file = getFile(posterUrl);
+		if (file == null) {
+			prefetch(posterUrl);
+			return posterUrl;
+		}
+		try {
+			return file.toURI().toURL().toString();
+		} catch (MalformedURLException e) {
+			return posterUrl;
+		}
+	}
+
+	/**
+	 * The stored image for the poster url, null if it hasn't been
+	 * downloaded
+	 */
+	public File getFile(String posterUrl) {
+		String name = index.get(posterUrl);
+		if (name == null) {
+			return null;
+		}
+		File file = new File(dir, name);
+		return file.exists() ? file : null;
+	}
+
+	/**
+	 * Number of posters waiting for or being downloaded
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Download the poster into the store now, in the calling thread
+	 */
+	File download(String posterUrl) throws IOException {
+		dir.mkdirs();
+		File temp = File.createTempFile("poster", ".part", dir);
+		try {
+			transfer(posterUrl, temp);
+			File file = new File(dir, digest(temp) + getExtension(posterUrl));
+			//an image that is already stored is kept as it is
+			if (!file.exists() && !temp.renameTo(file) && !file.exists()) {
+				throw new IOException("Could not move poster to " + file);
+			}
+			index.put(posterUrl, file.getName());
+			return file;
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private void transfer(String posterUrl, File target) throws IOException {
+		WebPage download = new WebPage(new URL(posterUrl), null);
+		download.setFile(target);
+		WebBrowsers.fetch(browser, download);
+		if (target.length() == 0) {
+			throw new IOException("Empty poster " + posterUrl);
+		}
+	}
+
+	/*
+	 * SHA-1 of the file in hex
+	 */
+	private static String digest(File file) throws IOException {
+		MessageDigest sha1;
+		try {
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("No SHA-1: " + e.getMessage());
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				sha1.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder sb = new StringBuilder(40);
+		for (byte b : sha1.digest()) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Extension of the image in the url, .jpg if it has none
+	 */
+	static String getExtension(String posterUrl) {
+		int slash = posterUrl.lastIndexOf('/');
+		int dot = posterUrl.lastIndexOf('.');
+		if (dot > slash && posterUrl.length() - dot <= 5) {
+			return posterUrl.substring(dot).toLowerCase();
+		}
+		return ".jpg";
+	}
+}
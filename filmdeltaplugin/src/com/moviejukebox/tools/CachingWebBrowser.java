@@ -0,0 +1,110 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that keeps fetched pages in a WebCache
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.logging.Logger;
+
+import com.moviejukebox.tools.Metrics.Outcome;
+
+/**
+ * Answers requests from a WebCache when a valid page is cached, otherwise
+ * fetches the page with the wrapped browser and stores it in the cache.
+ * Downloads and requests to hosts without a cache ttl are passed straight
+ * through.
+ *
+ * The start of a page read up to PageMarkers is cached apart from the
+ * whole page, a cached whole page answers both kinds of requests. Pages
+ * missing a marker are not cached if their markers say so.
+ *
+ * Expired pages are revalidated with a conditional request, when the
+ * server answers 304 Not Modified the cached page is used again. When the
+ * site can't be reached the expired page is used as it is. Pages answered
+ * from the cache are marked unchanged.
+ */
+public class CachingWebBrowser extends WebBrowserDecorator {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+
+	private final WebCache cache;
+
+	public CachingWebBrowser(WebBrowser delegate, WebCache cache) {
+		super(delegate);
+		this.cache = cache;
+	}
+
+	public WebCache getCache() {
+		return cache;
+	}
+
+	@Override
+	public void fetch(WebPage page) throws IOException {
+		URL url = page.getUrl();
+		if (page.getFile() != null || !cache.isCacheable(url)) {
+			fetch(delegate, page);
+			return;
+		}
+		String key = url.toString();
+		String content = cache.get(key);
+		if (content == null && page.getMarkers() != null) {
+			key = key + "#" + page.getMarkers().getKey();
+			content = cache.get(key);
+		}
+		if (content != null) {
+			Metrics.getShared().count(Metrics.WEB_CACHE, Outcome.SUCCESS);
+			logger.finest("CachingWebBrowser: using cached page for " + key);
+			page.setContent(content);
+			page.setUnchanged(true);
+			return;
+		}
+		Metrics.getShared().count(Metrics.WEB_CACHE, Outcome.MISS);
+		//revalidate an expired page instead of fetching it again
+		page.setConditional(true);
+		page.setValidators(cache.getETag(key), cache.getLastModified(key));
+		try {
+			fetch(delegate, page);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			//the site is down or didn't answer, the expired page will do
+			content = cache.getExpired(key);
+			if (content == null) {
+				throw e;
+			}
+			logger.finer("CachingWebBrowser: using expired page for " + key + " : " + e.getMessage());
+			page.setNotModified(false);
+			page.setContent(content);
+			page.setUnchanged(true);
+			return;
+		}
+		if (page.isNotModified()) {
+			content = cache.renew(key);
+			if (content != null) {
+				logger.finest("CachingWebBrowser: cached page not modified " + key);
+				page.setContent(content);
+				page.setUnchanged(true);
+				return;
+			}
+			//lost the cached copy, fetch the whole page
+			page.setNotModified(false);
+			page.setValidators(null, null);
+			fetch(delegate, page);
+		}
+		content = page.getContent();
+		if (content == null || content.length() == 0) {
+			return;
+		}
+		PageMarkers markers = page.getMarkers();
+		if (markers != null && !markers.isCachedWhenMissing() && !markers.isFound(content)) {
+			logger.finest("CachingWebBrowser: not caching page without " + markers + " " + key);
+			return;
+		}
+		cache.put(key, content, page.getETag(), page.getLastModified());
+	}
+}
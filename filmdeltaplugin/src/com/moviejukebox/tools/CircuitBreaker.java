@@ -0,0 +1,125 @@
+/* Filmdelta.se plugin
+ *
+ * Circuit breaker that stops requests to a site that is down
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.logging.Logger;
+
+import com.moviejukebox.tools.Metrics.Outcome;
+
+/**
+ * Keeps track of the failures of one site. After a number of failures in
+ * a row the circuit opens and requests fail at once instead of each
+ * waiting for its own timeout. Once the open time has passed the circuit
+ * is half open: one request at a time is let through as a probe, the
+ * circuit closes when a probe succeeds and opens again when it fails.
+ *
+ * The state is published in the metrics, and the changes are counted in
+ * Metrics.CIRCUIT_BREAKER: opened as errors, closed again as successes and
+ * requests refused while open as misses.
+ */
+public class CircuitBreaker {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int threshold;
+	private final long openMillis;
+	private final Metrics metrics;
+
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long openedAt;
+	private boolean probing = false;
+
+	/**
+	 * @param name the site, as shown in the metrics
+	 * @param threshold failures in a row that open the circuit
+	 * @param openMillis how long the circuit stays open before it is probed
+	 */
+	public CircuitBreaker(String name, int threshold, long openMillis, Metrics metrics) {
+		this.name = name;
+		this.threshold = Math.max(1, threshold);
+		this.openMillis = openMillis;
+		this.metrics = metrics;
+		metrics.setCircuitState(name, state.toString());
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * True if a request may be sent now, it has to be followed by a call to
+	 * success or failure
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.OPEN) {
+			if (System.currentTimeMillis() - openedAt < openMillis) {
+				metrics.count(Metrics.CIRCUIT_BREAKER, Outcome.MISS);
+				return false;
+			}
+			setState(State.HALF_OPEN);
+		}
+		if (state == State.HALF_OPEN) {
+			//one probe at a time
+			if (probing) {
+				metrics.count(Metrics.CIRCUIT_BREAKER, Outcome.MISS);
+				return false;
+			}
+			probing = true;
+		}
+		return true;
+	}
+
+	public synchronized void success() {
+		failures = 0;
+		probing = false;
+		if (state != State.CLOSED) {
+			logger.info("CircuitBreaker: " + name + " answers again, closing the circuit");
+			metrics.count(Metrics.CIRCUIT_BREAKER, Outcome.SUCCESS);
+			setState(State.CLOSED);
+		}
+	}
+
+	public synchronized void failure() {
+		failures++;
+		if (state == State.HALF_OPEN && probing) {
+			probing = false;
+			open();
+		} else if (state == State.CLOSED && failures >= threshold) {
+			open();
+		}
+	}
+
+	/**
+	 * The request was given up before it was answered
+	 */
+	public synchronized void cancelled() {
+		probing = false;
+	}
+
+	private void open() {
+		logger.warning("CircuitBreaker: " + name + " failed " + failures + " times in a row, not requesting it for "
+			+ (openMillis / 1000) + " s");
+		metrics.count(Metrics.CIRCUIT_BREAKER, Outcome.ERROR);
+		openedAt = System.currentTimeMillis();
+		setState(State.OPEN);
+	}
+
+	private void setState(State state) {
+		this.state = state;
+		metrics.setCircuitState(name, state.toString());
+	}
+}
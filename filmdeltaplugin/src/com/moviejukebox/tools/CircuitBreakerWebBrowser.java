@@ -0,0 +1,77 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that stops sending requests to a site that is down
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One CircuitBreaker per host (host without "www."). After
+ * filmdelta.breaker.failures failed requests in a row (5 by default) the
+ * host is not requested for filmdelta.breaker.open seconds (60 by
+ * default), requests fail at once with a CircuitOpenException. Then single
+ * probe requests are let through until one succeeds.
+ *
+ * Pages that don't exist (404) are answers, not failures. Breakers are
+ * shared by all instances, so the filmdelta and cdon plugins see the same
+ * state for a host.
+ */
+public class CircuitBreakerWebBrowser extends WebBrowserDecorator {
+
+	private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	public CircuitBreakerWebBrowser(WebBrowser delegate) {
+		super(delegate);
+	}
+
+	/**
+	 * The breaker of host, created the first time it is asked for
+	 */
+	public static CircuitBreaker getBreaker(String host) {
+		String key = WebCache.normalizeHost(host);
+		CircuitBreaker breaker = breakers.get(key);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(key,
+				Integer.parseInt(PropertiesUtil.getProperty("filmdelta.breaker.failures", "5")),
+				Long.parseLong(PropertiesUtil.getProperty("filmdelta.breaker.open", "60")) * 1000,
+				Metrics.getShared());
+			breaker = breakers.putIfAbsent(key, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	@Override
+	public void fetch(WebPage page) throws IOException {
+		CircuitBreaker breaker = getBreaker(page.getUrl().getHost());
+		if (!breaker.allowRequest()) {
+			throw new CircuitOpenException(breaker.getName() + " is down, not requesting " + page.getUrl());
+		}
+		try {
+			fetch(delegate, page);
+		} catch (FileNotFoundException e) {
+			breaker.success();
+			throw e;
+		} catch (IOException e) {
+			if (Thread.currentThread().isInterrupted()) {
+				//given up by the scan, says nothing about the site
+				breaker.cancelled();
+			} else {
+				breaker.failure();
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			breaker.failure();
+			throw e;
+		}
+		breaker.success();
+	}
+}
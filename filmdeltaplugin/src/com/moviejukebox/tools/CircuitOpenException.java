@@ -0,0 +1,22 @@
+/* Filmdelta.se plugin
+ *
+ * Request refused because its site is down
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to a site whose circuit breaker is
+ * open.
+ */
+public class CircuitOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String message) {
+		super(message);
+	}
+}
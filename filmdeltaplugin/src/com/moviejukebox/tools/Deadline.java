@@ -0,0 +1,56 @@
+/* Filmdelta.se plugin
+ *
+ * Time budget of a scan, shared by its phases
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A time budget that starts when it is created. The phases of a scan get
+ * a share of it: a phase given 0.8 has to be done when 80% of the budget
+ * has passed, so the phases after it have the rest. Time a phase doesn't
+ * use is left for the following ones.
+ *
+ * A budget of 0 means no deadline.
+ */
+public class Deadline {
+
+	private final long start = System.nanoTime();
+	private final long budget;
+
+	/**
+	 * @param budgetMillis the budget in milliseconds, 0 for no deadline
+	 */
+	public Deadline(long budgetMillis) {
+		this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+	}
+
+	public boolean isBounded() {
+		return budget > 0;
+	}
+
+	/**
+	 * Milliseconds left until share of the budget has passed, 0 if it
+	 * already has and Long.MAX_VALUE if there is no deadline
+	 *
+	 * @param share between 0 and 1
+	 */
+	public long getRemainingMillis(double share) {
+		if (!isBounded()) {
+			return Long.MAX_VALUE;
+		}
+		long end = start + (long) (budget * Math.min(1.0, Math.max(0.0, share)));
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()));
+	}
+
+	public long getRemainingMillis() {
+		return getRemainingMillis(1.0);
+	}
+
+	public boolean isExpired() {
+		return isBounded() && System.nanoTime() - start >= budget;
+	}
+}
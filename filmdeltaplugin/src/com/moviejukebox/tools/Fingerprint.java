@@ -0,0 +1,37 @@
+/* Filmdelta.se plugin
+ *
+ * Short fingerprint of a page to see if it changed
+ *
+ */
+
+package com.moviejukebox.tools;
+
+/**
+ * 64 bit FNV-1a hash of the characters of a text. Two texts with the same
+ * fingerprint are taken to be the same, it is not meant to be secure.
+ */
+public final class Fingerprint {
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fingerprint() {
+	}
+
+	/**
+	 * The fingerprint as 16 hex digits
+	 */
+	public static String of(CharSequence text) {
+		long hash = OFFSET_BASIS;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			hash ^= c & 0xff;
+			hash *= PRIME;
+			hash ^= c >>> 8;
+			hash *= PRIME;
+		}
+		String hex = Long.toHexString(hash);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+}
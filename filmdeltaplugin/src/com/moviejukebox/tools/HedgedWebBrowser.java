@@ -0,0 +1,229 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that sends a second request when the first one is slow
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.moviejukebox.tools.Metrics.Outcome;
+
+/**
+ * Hedged requests: when a request to one of the filmdelta.hedge.hosts
+ * (filmdelta.se and cdon.se by default) has not been answered after the
+ * filmdelta.hedge.percentile percentile (95 by default, 0 turns hedging
+ * off) of the latencies seen for its host, the same request is sent once
+ * more and the first answer is used. The slower request is aborted, see
+ * WebPage.abort: if it is still waiting for the response its connection
+ * is disconnected and it gives back its thread and connection permit
+ * right away, if its body is already coming in it stops at the next read.
+ *
+ * Only about one request in twenty waits that long, so the extra load on
+ * the sites stays small while a stalled connection no longer holds up a
+ * scan for the whole socket timeout. A host is hedged once enough
+ * latencies have been seen to know its percentile.
+ *
+ * Requests are sent from a pool of at most filmdelta.hedge.threads threads
+ * (16 by default). While all of them are busy requests are sent from the
+ * calling thread without a hedge.
+ *
+ * Latencies are shared by all instances. Hedges that answered first are
+ * counted as successes of Metrics.HEDGED_REQUEST, hedges that lost as
+ * misses.
+ */
+public class HedgedWebBrowser extends WebBrowserDecorator {
+
+	private static final int MIN_SAMPLES = 20;
+
+	private static final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	private static final ExecutorService attempts = new ThreadPoolExecutor(0,
+		Integer.parseInt(PropertiesUtil.getProperty("filmdelta.hedge.threads", "16")),
+		60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "filmdelta-hedge");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+	private final Set<String> hosts = new HashSet<String>();
+	private final double percentile;
+	private final int minSamples;
+
+	public HedgedWebBrowser(WebBrowser delegate) {
+		this(delegate,
+			PropertiesUtil.getProperty("filmdelta.hedge.hosts", "filmdelta.se,cdon.se"),
+			Double.parseDouble(PropertiesUtil.getProperty("filmdelta.hedge.percentile", "95")) / 100,
+			MIN_SAMPLES);
+	}
+
+	/**
+	 * @param hosts comma separated hosts to hedge requests to
+	 * @param percentile latency fraction after which a request is hedged,
+	 * 0 to never hedge
+	 * @param minSamples latencies to see for a host before it is hedged
+	 */
+	public HedgedWebBrowser(WebBrowser delegate, String hosts, double percentile, int minSamples) {
+		super(delegate);
+		for (String host : hosts.split(",")) {
+			if (host.trim().length() > 0) {
+				this.hosts.add(WebCache.normalizeHost(host.trim()));
+			}
+		}
+		this.percentile = percentile;
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * Milliseconds to wait for a request to host before it is hedged, -1
+	 * if its requests are not hedged (yet)
+	 */
+	public long getHedgeDelay(String host) {
+		String key = WebCache.normalizeHost(host);
+		if (percentile <= 0 || !hosts.contains(key)) {
+			return -1;
+		}
+		LatencyHistogram latency = latencies.get(key);
+		if (latency == null || latency.getCount() < minSamples) {
+			return -1;
+		}
+		return Math.max(1, (long) Math.ceil(latency.getPercentile(percentile)));
+	}
+
+	@Override
+	public void fetch(WebPage page) throws IOException {
+		String host = page.getUrl().getHost();
+		if (page.getFile() != null) {
+			//two requests can't write one file, and images would skew the
+			//latencies of the pages
+			fetch(delegate, page);
+			return;
+		}
+		long delay = getHedgeDelay(host);
+		if (delay < 0) {
+			fetchTimed(page, getLatency(host));
+			return;
+		}
+
+		CompletionService<WebPage> responses = new ExecutorCompletionService<WebPage>(attempts);
+		WebPage firstCopy = copy(page);
+		WebPage hedgeCopy = copy(page);
+		Future<WebPage> first;
+		try {
+			first = responses.submit(attempt(firstCopy, host));
+		} catch (RejectedExecutionException e) {
+			//all threads busy, no hedge for this request
+			fetchTimed(page, getLatency(host));
+			return;
+		}
+		Future<WebPage> hedge = null;
+		try {
+			Future<WebPage> done = responses.poll(delay, TimeUnit.MILLISECONDS);
+			if (done == null) {
+				try {
+					hedge = responses.submit(attempt(hedgeCopy, host));
+				} catch (RejectedExecutionException e) {
+					//all threads busy, keep waiting for the first request
+				}
+				done = responses.take();
+			}
+			WebPage response;
+			try {
+				response = done.get();
+			} catch (ExecutionException e) {
+				if (hedge == null) {
+					throw e;
+				}
+				//the other request may still make it
+				done = responses.take();
+				response = done.get();
+			}
+			if (hedge != null) {
+				Metrics.getShared().count(Metrics.HEDGED_REQUEST, done == hedge ? Outcome.SUCCESS : Outcome.MISS);
+				//the slower request is not needed any more, interrupting
+				//it doesn't stop a blocked read so it is aborted
+				(done == hedge ? firstCopy : hedgeCopy).abort();
+				(done == hedge ? first : hedge).cancel(true);
+			}
+			page.setResponse(response);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Failed fetching " + page.getUrl(), cause);
+		} catch (InterruptedException e) {
+			firstCopy.abort();
+			hedgeCopy.abort();
+			first.cancel(true);
+			if (hedge != null) {
+				hedge.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + page.getUrl());
+		}
+	}
+
+	/*
+	 * A copy of the request, so the two requests don't share their
+	 * response
+	 */
+	private static WebPage copy(WebPage page) {
+		WebPage copy = new WebPage(page.getUrl(), page.getMarkers());
+		copy.setConditional(page.isConditional());
+		copy.setValidators(page.getETag(), page.getLastModified());
+		return copy;
+	}
+
+	private Callable<WebPage> attempt(final WebPage copy, final String host) {
+		return new Callable<WebPage>() {
+			public WebPage call() throws IOException {
+				fetchTimed(copy, getLatency(host));
+				return copy;
+			}
+		};
+	}
+
+	/*
+	 * Only answered requests count, failures would lower the percentile
+	 */
+	private void fetchTimed(WebPage page, LatencyHistogram latency) throws IOException {
+		long start = System.nanoTime();
+		fetch(delegate, page);
+		latency.record(System.nanoTime() - start);
+	}
+
+	private static LatencyHistogram getLatency(String host) {
+		String key = WebCache.normalizeHost(host);
+		LatencyHistogram latency = latencies.get(key);
+		if (latency == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			latency = latencies.putIfAbsent(key, created);
+			if (latency == null) {
+				latency = created;
+			}
+		}
+		return latency;
+	}
+}
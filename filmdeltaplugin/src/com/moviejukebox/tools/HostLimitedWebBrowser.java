@@ -0,0 +1,65 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that limits the number of concurrent requests per host
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Lets at most filmdelta.connections.&lt;host&gt; requests to the same host
+ * run at the same time (host without "www."). Hosts without their own
+ * property use filmdelta.connections.
+ *
+ * The limits are shared by all instances, so the filmdelta and cdon
+ * plugins count against the same cap for a host.
+ */
+public class HostLimitedWebBrowser extends WebBrowserDecorator {
+
+	private static final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+	public HostLimitedWebBrowser(WebBrowser delegate) {
+		super(delegate);
+	}
+
+	public static int getLimit(String host) {
+		String defaultLimit = PropertiesUtil.getProperty("filmdelta.connections", "4");
+		return Math.max(1, Integer.parseInt(PropertiesUtil.getProperty("filmdelta.connections." + WebCache.normalizeHost(host), defaultLimit)));
+	}
+
+	@Override
+	public void fetch(WebPage page) throws IOException {
+		URL url = page.getUrl();
+		Semaphore semaphore = getPermits(url.getHost());
+		try {
+			semaphore.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection to " + url.getHost());
+		}
+		try {
+			fetch(delegate, page);
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	private static Semaphore getPermits(String host) {
+		String key = WebCache.normalizeHost(host);
+		Semaphore semaphore = permits.get(key);
+		if (semaphore == null) {
+			Semaphore created = new Semaphore(getLimit(key), true);
+			semaphore = permits.putIfAbsent(key, created);
+			if (semaphore == null) {
+				semaphore = created;
+			}
+		}
+		return semaphore;
+	}
+}
@@ -0,0 +1,98 @@
+/* Filmdelta.se plugin
+ *
+ * Lock free histogram of latencies
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets on a logarithmic scale: each power of two
+ * of microseconds is split in eight equal buckets, so a percentile is off
+ * by at most an eighth. Latencies from one microsecond to over an hour are
+ * kept apart, longer ones end up in the last bucket.
+ *
+ * Can be updated and read from several threads at once without locking.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BITS = 3;
+	private static final int POWERS = 33;
+
+	private final AtomicLongArray counts = new AtomicLongArray(POWERS * SUB_BUCKETS);
+
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+	}
+
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * The latency in milliseconds below which the fraction of the recorded
+	 * latencies fall (upper bound of its bucket), 0 if nothing was recorded
+	 *
+	 * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+	 */
+	public double getPercentile(double fraction) {
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return upperBound(i) / 1000.0;
+			}
+		}
+		return upperBound(snapshot.length - 1) / 1000.0;
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	/*
+	 * Values below 8 get a bucket each, above that the power of two picks
+	 * the row and the next three bits the bucket in it
+	 */
+	static int bucket(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int power = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (power - SUB_BITS)) & (SUB_BUCKETS - 1);
+		int index = (power - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		return Math.min(index, POWERS * SUB_BUCKETS - 1);
+	}
+
+	/*
+	 * Highest latency in microseconds counted in the bucket
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int power = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		int sub = bucket % SUB_BUCKETS;
+		long width = 1L << (power - SUB_BITS);
+		return (1L << power) + (sub + 1) * width - 1;
+	}
+}
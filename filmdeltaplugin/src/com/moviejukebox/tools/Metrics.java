@@ -0,0 +1,244 @@
+/* Filmdelta.se plugin
+ *
+ * Latency and outcome counters for the phases of a scan
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records how long each phase of a scan takes and how it ended: success,
+ * miss (the site had nothing for the movie) or error. Caches count hits
+ * as successes and misses as misses, without latency.
+ *
+ * The shared instance is published over JMX (in the background, shortly
+ * after it is created) and logs a summary to the moviejukebox logger when
+ * the jukebox exits (filmdelta.metrics.summary=false turns that off). The
+ * summary is logged from a shutdown hook, so it is lost if the logging
+ * has already been shut down by then.
+ */
+public class Metrics implements MetricsMBean {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+
+	public static final String GOOGLE = "google lookup";
+	public static final String FILMDELTA_FETCH = "filmdelta fetch";
+	public static final String FILMDELTA_PARSE = "filmdelta parse";
+	public static final String IMDB = "imdb scan";
+	public static final String TVDB = "tvdb scan";
+	public static final String CDON_SEARCH = "cdon search";
+	public static final String CDON_DETAIL = "cdon detail";
+	public static final String WEB_CACHE = "web cache";
+	public static final String ID_INDEX = "id index";
+	public static final String CDON_CACHE = "cdon poster cache";
+	public static final String SHARED_REQUEST = "shared request";
+	public static final String POSTER_PREFETCH = "poster prefetch";
+	public static final String HEDGED_REQUEST = "hedged request";
+	public static final String SCAN_DEADLINE = "scan deadline";
+	public static final String CIRCUIT_BREAKER = "circuit breaker";
+
+	public enum Outcome {
+		SUCCESS, MISS, ERROR
+	}
+
+	private static Metrics sharedMetrics;
+
+	private final ConcurrentMap<String, Phase> phases = new ConcurrentHashMap<String, Phase>();
+	//state of the circuit breaker of each site
+	private final ConcurrentMap<String, String> circuits = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Counters and latencies of one phase
+	 */
+	public static class Phase {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicLong[] outcomes = new AtomicLong[Outcome.values().length];
+
+		Phase() {
+			for (int i = 0; i < outcomes.length; i++) {
+				outcomes[i] = new AtomicLong();
+			}
+		}
+
+		/**
+		 * Record a phase that started at start (System.nanoTime())
+		 */
+		public void record(long start, Outcome outcome) {
+			latency.record(System.nanoTime() - start);
+			count(outcome);
+		}
+
+		public void count(Outcome outcome) {
+			outcomes[outcome.ordinal()].incrementAndGet();
+		}
+
+		public long getCount(Outcome outcome) {
+			return outcomes[outcome.ordinal()].get();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		void reset() {
+			latency.reset();
+			for (AtomicLong count : outcomes) {
+				count.set(0);
+			}
+		}
+	}
+
+	/**
+	 * The metrics shared by the filmdelta and cdon plugins
+	 */
+	public static synchronized Metrics getShared() {
+		if (sharedMetrics == null) {
+			sharedMetrics = new Metrics();
+			//starting the platform MBean server takes a while, don't make
+			//the first plugin wait for it
+			final Metrics metrics = sharedMetrics;
+			Thread register = new Thread("filmdelta-metrics") {
+				public void run() {
+					try {
+						ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+							new ObjectName("com.moviejukebox.filmdelta:type=Metrics"));
+					} catch (JMException e) {
+						logger.finer("Metrics: failed registering the metrics MBean : " + e.getMessage());
+					}
+				}
+			};
+			register.setDaemon(true);
+			register.start();
+			if (PropertiesUtil.getProperty("filmdelta.metrics.summary", "true").equalsIgnoreCase("true")) {
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					public void run() {
+						metrics.logSummary();
+					}
+				});
+			}
+		}
+		return sharedMetrics;
+	}
+
+	/**
+	 * The named phase, created the first time it is asked for
+	 */
+	public Phase phase(String name) {
+		Phase phase = phases.get(name);
+		if (phase == null) {
+			Phase created = new Phase();
+			phase = phases.putIfAbsent(name, created);
+			if (phase == null) {
+				phase = created;
+			}
+		}
+		return phase;
+	}
+
+	/**
+	 * Record the named phase that started at start (System.nanoTime())
+	 */
+	public void record(String name, long start, Outcome outcome) {
+		phase(name).record(start, outcome);
+	}
+
+	public void count(String name, Outcome outcome) {
+		phase(name).count(outcome);
+	}
+
+	public String[] getPhases() {
+		return phases.keySet().toArray(new String[0]);
+	}
+
+	public void setCircuitState(String site, String state) {
+		circuits.put(site, state);
+	}
+
+	public String[] getCircuits() {
+		return circuits.keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * CLOSED, OPEN or HALF_OPEN, null for a site without a circuit breaker
+	 */
+	public String getCircuitState(String site) {
+		return circuits.get(site);
+	}
+
+	public long getSuccessCount(String phase) {
+		return existing(phase).getCount(Outcome.SUCCESS);
+	}
+
+	public long getMissCount(String phase) {
+		return existing(phase).getCount(Outcome.MISS);
+	}
+
+	public long getErrorCount(String phase) {
+		return existing(phase).getCount(Outcome.ERROR);
+	}
+
+	public double getP50Millis(String phase) {
+		return existing(phase).getLatency().getPercentile(0.5);
+	}
+
+	public double getP99Millis(String phase) {
+		return existing(phase).getLatency().getPercentile(0.99);
+	}
+
+	/*
+	 * Reading a phase that never ran doesn't create it
+	 */
+	private Phase existing(String name) {
+		Phase phase = phases.get(name);
+		return phase == null ? new Phase() : phase;
+	}
+
+	/**
+	 * One line per phase with its counters, and the p50/p99 latency for
+	 * phases that were timed, followed by the state of each circuit breaker
+	 */
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder("Filmdelta metrics:");
+		for (Map.Entry<String, Phase> entry : new TreeMap<String, Phase>(phases).entrySet()) {
+			Phase phase = entry.getValue();
+			sb.append("\n  ").append(entry.getKey()).append(": ");
+			sb.append(phase.getCount(Outcome.SUCCESS)).append(" success, ");
+			sb.append(phase.getCount(Outcome.MISS)).append(" miss, ");
+			sb.append(phase.getCount(Outcome.ERROR)).append(" error");
+			if (phase.getLatency().getCount() > 0) {
+				sb.append(", p50 ").append(phase.getLatency().getPercentile(0.5)).append(" ms");
+				sb.append(", p99 ").append(phase.getLatency().getPercentile(0.99)).append(" ms");
+			}
+		}
+		for (Map.Entry<String, String> entry : new TreeMap<String, String>(circuits).entrySet()) {
+			sb.append("\n  circuit ").append(entry.getKey()).append(": ").append(entry.getValue());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Log the summary, nothing if nothing was recorded
+	 */
+	public void logSummary() {
+		if (!phases.isEmpty() || !circuits.isEmpty()) {
+			logger.info(getSummary());
+		}
+	}
+
+	public void reset() {
+		for (Phase phase : phases.values()) {
+			phase.reset();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/* Filmdelta.se plugin
+ *
+ * JMX interface of the plugin metrics
+ *
+ */
+
+package com.moviejukebox.tools;
+
+/**
+ * Latencies and outcome counters of the phases of a scan and the state of
+ * the circuit breakers, published as com.moviejukebox.filmdelta:type=Metrics.
+ */
+public interface MetricsMBean {
+
+	String[] getPhases();
+
+	long getSuccessCount(String phase);
+
+	long getMissCount(String phase);
+
+	long getErrorCount(String phase);
+
+	/** median latency of the phase in milliseconds */
+	double getP50Millis(String phase);
+
+	/** 99th percentile latency of the phase in milliseconds */
+	double getP99Millis(String phase);
+
+	/** sites with a circuit breaker */
+	String[] getCircuits();
+
+	/** CLOSED, OPEN or HALF_OPEN */
+	String getCircuitState(String site);
+
+	String getSummary();
+
+	void reset();
+}
@@ -0,0 +1,154 @@
+/* Filmdelta.se plugin
+ *
+ * Finds several strings in a text in one pass
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a fixed set of patterns. The text is read
+ * once, one character at a time, and the first place each pattern occurs
+ * is reported without copying any part of the text.
+ *
+ * The automaton is built in the constructor and never changed, so one
+ * matcher can be used by several threads at once.
+ */
+public class MultiPatternMatcher {
+
+	private final int patternCount;
+	//column in the transition table for each character, -1 for characters
+	//that occur in no pattern (they always lead back to the start state)
+	private final int[] columns;
+	private final int columnCount;
+	//next state for each state and column
+	private final int[][] transitions;
+	//patterns that end in each state, including those ending in its
+	//fallback states
+	private final int[][] matches;
+
+	public MultiPatternMatcher(String... patterns) {
+		patternCount = patterns.length;
+		char maxChar = 0;
+		for (String pattern : patterns) {
+			if (pattern.length() == 0) {
+				throw new IllegalArgumentException("Empty pattern");
+			}
+			for (int i = 0; i < pattern.length(); i++) {
+				maxChar = (char) Math.max(maxChar, pattern.charAt(i));
+			}
+		}
+		columns = new int[maxChar + 1];
+		Arrays.fill(columns, -1);
+		int column = 0;
+		for (String pattern : patterns) {
+			for (int i = 0; i < pattern.length(); i++) {
+				if (columns[pattern.charAt(i)] == -1) {
+					columns[pattern.charAt(i)] = column++;
+				}
+			}
+		}
+		columnCount = column;
+
+		//trie of the patterns, -1 for missing edges
+		List<int[]> trie = new ArrayList<int[]>();
+		List<List<Integer>> ends = new ArrayList<List<Integer>>();
+		trie.add(newState());
+		ends.add(new ArrayList<Integer>());
+		for (int p = 0; p < patterns.length; p++) {
+			int state = 0;
+			for (int i = 0; i < patterns[p].length(); i++) {
+				int c = columns[patterns[p].charAt(i)];
+				if (trie.get(state)[c] == -1) {
+					trie.get(state)[c] = trie.size();
+					trie.add(newState());
+					ends.add(new ArrayList<Integer>());
+				}
+				state = trie.get(state)[c];
+			}
+			ends.get(state).add(Integer.valueOf(p));
+		}
+
+		//breadth first, fill in the missing edges from the fallback state
+		//so that every state has a transition for every column
+		int[] fallback = new int[trie.size()];
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		int[] root = trie.get(0);
+		for (int c = 0; c < columnCount; c++) {
+			if (root[c] == -1) {
+				root[c] = 0;
+			} else {
+				fallback[root[c]] = 0;
+				queue.add(Integer.valueOf(root[c]));
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.removeFirst().intValue();
+			ends.get(state).addAll(ends.get(fallback[state]));
+			int[] edges = trie.get(state);
+			for (int c = 0; c < columnCount; c++) {
+				int next = edges[c];
+				if (next == -1) {
+					edges[c] = trie.get(fallback[state])[c];
+				} else {
+					fallback[next] = trie.get(fallback[state])[c];
+					queue.add(Integer.valueOf(next));
+				}
+			}
+		}
+
+		transitions = trie.toArray(new int[trie.size()][]);
+		matches = new int[ends.size()][];
+		for (int s = 0; s < matches.length; s++) {
+			List<Integer> found = ends.get(s);
+			matches[s] = new int[found.size()];
+			for (int i = 0; i < found.size(); i++) {
+				matches[s][i] = found.get(i).intValue();
+			}
+		}
+	}
+
+	private int[] newState() {
+		int[] state = new int[columnCount];
+		Arrays.fill(state, -1);
+		return state;
+	}
+
+	public int getPatternCount() {
+		return patternCount;
+	}
+
+	/**
+	 * Position just after the first occurrence of each pattern in text,
+	 * -1 for patterns that don't occur. Reading stops as soon as every
+	 * pattern has been found.
+	 */
+	public int[] findFirst(CharSequence text) {
+		int[] found = new int[patternCount];
+		Arrays.fill(found, -1);
+		int missing = patternCount;
+		int state = 0;
+		int length = text.length();
+		for (int i = 0; i < length && missing > 0; i++) {
+			char ch = text.charAt(i);
+			int c = ch < columns.length ? columns[ch] : -1;
+			if (c == -1) {
+				state = 0;
+				continue;
+			}
+			state = transitions[state][c];
+			for (int p : matches[state]) {
+				if (found[p] == -1) {
+					found[p] = i + 1;
+					missing--;
+				}
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,295 @@
+/* Filmdelta.se plugin
+ *
+ * Connection that reads one WebPage for WebBrowser.request
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Wraps the connection opened for a WebPage, everything not about the body
+ * of the page is passed on to it. The request asks for a gzip or deflate
+ * compressed page and sends the validators of a conditional request. The
+ * body is handed to the reader decompressed, cut at the PageMarkers of the
+ * page, or empty when the server answered 304 Not Modified.
+ *
+ * An error page is read to its end so the connection can be reused. A page
+ * cut at its markers is disconnected when its stream is closed, so the JDK
+ * does not download the rest to keep the connection alive.
+ */
+class PageConnection extends HttpURLConnection {
+
+	private final HttpURLConnection connection;
+	private final WebPage page;
+	private InputStream body;
+
+	PageConnection(HttpURLConnection connection, WebPage page) {
+		super(connection.getURL());
+		this.connection = connection;
+		this.page = page;
+		connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+		if (page.isConditional()) {
+			if (page.getETag() != null) {
+				connection.setRequestProperty("If-None-Match", page.getETag());
+			}
+			if (page.getLastModified() != null) {
+				connection.setRequestProperty("If-Modified-Since", page.getLastModified());
+			}
+		}
+	}
+
+	@Override
+	public synchronized InputStream getInputStream() throws IOException {
+		if (body == null) {
+			body = openBody();
+		}
+		return body;
+	}
+
+	private InputStream openBody() throws IOException {
+		if (page.isConditional() && connection.getResponseCode() == HTTP_NOT_MODIFIED) {
+			page.setNotModified(true);
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		InputStream in;
+		try {
+			in = connection.getInputStream();
+		} catch (IOException e) {
+			discardErrorPage();
+			throw e;
+		}
+		if (page.isConditional()) {
+			page.setValidators(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+		}
+		in = decode(in, connection.getContentEncoding());
+		//an aborted page stops at its next read
+		in = new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				checkAborted();
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				checkAborted();
+				return super.read(b, off, len);
+			}
+		};
+		if (page.getMarkers() == null) {
+			return in;
+		}
+		final PageMarkers.CutInputStream cut = page.getMarkers().cut(in);
+		return new FilterInputStream(cut) {
+			@Override
+			public void close() throws IOException {
+				if (cut.isCut()) {
+					connection.disconnect();
+				}
+				super.close();
+			}
+		};
+	}
+
+	private void checkAborted() throws IOException {
+		if (page.isAborted()) {
+			throw new IOException("Request for " + page.getUrl() + " was aborted");
+		}
+	}
+
+	private static InputStream decode(InputStream in, String encoding) throws IOException {
+		if (encoding == null) {
+			return in;
+		}
+		encoding = encoding.trim().toLowerCase();
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(in);
+		}
+		if (encoding.equals("deflate")) {
+			return new InflaterInputStream(in);
+		}
+		return in;
+	}
+
+	/*
+	 * An error response has to be read before its connection can be reused
+	 */
+	private void discardErrorPage() {
+		InputStream error = connection.getErrorStream();
+		if (error == null) {
+			return;
+		}
+		try {
+			byte[] buffer = new byte[4096];
+			while (error.read(buffer) != -1) {
+				//skip
+			}
+			error.close();
+		} catch (IOException e) {
+			//the connection is dropped instead
+		}
+	}
+
+	@Override
+	public void connect() throws IOException {
+		connection.connect();
+	}
+
+	@Override
+	public void disconnect() {
+		connection.disconnect();
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return connection.usingProxy();
+	}
+
+	@Override
+	public URL getURL() {
+		return connection.getURL();
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		return connection.getResponseCode();
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		return connection.getResponseMessage();
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return connection.getErrorStream();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		return connection.getOutputStream();
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return connection.getHeaderField(name);
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return connection.getHeaderField(n);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return connection.getHeaderFieldKey(n);
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return connection.getHeaderFields();
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		connection.setRequestProperty(key, value);
+	}
+
+	@Override
+	public void addRequestProperty(String key, String value) {
+		connection.addRequestProperty(key, value);
+	}
+
+	@Override
+	public String getRequestProperty(String key) {
+		return connection.getRequestProperty(key);
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestProperties() {
+		return connection.getRequestProperties();
+	}
+
+	@Override
+	public void setRequestMethod(String method) throws ProtocolException {
+		connection.setRequestMethod(method);
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return connection.getRequestMethod();
+	}
+
+	@Override
+	public void setInstanceFollowRedirects(boolean followRedirects) {
+		connection.setInstanceFollowRedirects(followRedirects);
+	}
+
+	@Override
+	public boolean getInstanceFollowRedirects() {
+		return connection.getInstanceFollowRedirects();
+	}
+
+	@Override
+	public void setConnectTimeout(int timeout) {
+		connection.setConnectTimeout(timeout);
+	}
+
+	@Override
+	public int getConnectTimeout() {
+		return connection.getConnectTimeout();
+	}
+
+	@Override
+	public void setReadTimeout(int timeout) {
+		connection.setReadTimeout(timeout);
+	}
+
+	@Override
+	public int getReadTimeout() {
+		return connection.getReadTimeout();
+	}
+
+	@Override
+	public void setDoOutput(boolean doOutput) {
+		connection.setDoOutput(doOutput);
+	}
+
+	@Override
+	public boolean getDoOutput() {
+		return connection.getDoOutput();
+	}
+
+	@Override
+	public void setUseCaches(boolean useCaches) {
+		connection.setUseCaches(useCaches);
+	}
+
+	@Override
+	public boolean getUseCaches() {
+		return connection.getUseCaches();
+	}
+
+	@Override
+	public void setIfModifiedSince(long ifModifiedSince) {
+		connection.setIfModifiedSince(ifModifiedSince);
+	}
+
+	@Override
+	public long getIfModifiedSince() {
+		return connection.getIfModifiedSince();
+	}
+}
@@ -0,0 +1,281 @@
+/* Filmdelta.se plugin
+ *
+ * Markers that end the part of a page a request is interested in
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * The strings that must have been seen before the rest of a page can be
+ * skipped. A page is read until every marker has been found, plus tail
+ * characters after the end of the last one. Pages missing a marker are
+ * read to the end.
+ *
+ * Pages are cut while they are downloaded by matching the markers on the
+ * raw bytes, see cut, so markers have to be ASCII (HTML entities for
+ * other characters).
+ *
+ * A page missing a marker is cached like any other, unless the markers are
+ * made with notCachedWhenMissing.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class PageMarkers {
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private final String[] markers;
+	private final int tail;
+	private final String key;
+	private final boolean cachedWhenMissing;
+	//the markers as bytes and their KMP failure tables, for cut
+	private final byte[][] bytes;
+	private final int[][] failures;
+
+	/**
+	 * @param tail number of characters to read after the last marker
+	 */
+	public PageMarkers(int tail, String... markers) {
+		this(true, tail, markers);
+	}
+
+	private PageMarkers(boolean cachedWhenMissing, int tail, String[] markers) {
+		this.cachedWhenMissing = cachedWhenMissing;
+		this.markers = markers.clone();
+		this.tail = tail;
+		StringBuilder sb = new StringBuilder("prefix:").append(tail);
+		for (String marker : markers) {
+			sb.append('|').append(marker);
+		}
+		this.key = sb.toString();
+		bytes = new byte[markers.length][];
+		failures = new int[markers.length][];
+		for (int i = 0; i < markers.length; i++) {
+			bytes[i] = ascii(markers[i]);
+			failures[i] = failureTable(bytes[i]);
+		}
+	}
+
+	/**
+	 * Identifies the markers, pages read with the same markers end at the
+	 * same place
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * The same markers, for pages that are only worth caching when all
+	 * markers are found, like a search result that may not have the link
+	 * looked for yet
+	 */
+	public PageMarkers notCachedWhenMissing() {
+		return new PageMarkers(false, tail, markers);
+	}
+
+	public boolean isCachedWhenMissing() {
+		return cachedWhenMissing;
+	}
+
+	/**
+	 * True if page has all markers
+	 */
+	public boolean isFound(String page) {
+		for (String marker : markers) {
+			if (page.indexOf(marker) == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads from in until all markers and the tail have been read, or to
+	 * the end of the page. The reader is not closed.
+	 */
+	public String read(Reader in) throws IOException {
+		StringBuilder page = new StringBuilder(BUFFER_SIZE * 4);
+		char[] buffer = new char[BUFFER_SIZE];
+		boolean[] found = new boolean[markers.length];
+		int missing = markers.length;
+		int end = 0;
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			int searched = page.length();
+			page.append(buffer, 0, count);
+			if (missing > 0) {
+				for (int i = 0; i < markers.length; i++) {
+					if (!found[i]) {
+						//the marker may start in the part read before
+						int index = page.indexOf(markers[i], Math.max(0, searched - markers[i].length() + 1));
+						if (index != -1) {
+							found[i] = true;
+							missing--;
+							end = Math.max(end, index + markers[i].length());
+						}
+					}
+				}
+			}
+			if (missing == 0 && page.length() >= end + tail) {
+				page.setLength(end + tail);
+				break;
+			}
+		}
+		return page.toString();
+	}
+
+	/**
+	 * The bytes of in up to the end of the last marker plus tail bytes, or
+	 * up to the end of the page if a marker is missing. Closing the
+	 * returned stream closes in.
+	 */
+	public CutInputStream cut(InputStream in) {
+		return new CutInputStream(in);
+	}
+
+	/**
+	 * A page that ends at the markers, isCut tells if there was more
+	 */
+	public class CutInputStream extends FilterInputStream {
+		//length of the matched start of each marker, -1 once found
+		private final int[] matched = new int[markers.length];
+		private int missing = markers.length;
+		//bytes still to return after the last marker
+		private int tailLeft = tail;
+		private boolean cut = false;
+
+		CutInputStream(InputStream in) {
+			super(in);
+			for (int i = 0; i < bytes.length; i++) {
+				if (bytes[i].length == 0) {
+					matched[i] = -1;
+					missing--;
+				}
+			}
+		}
+
+		/**
+		 * True if the page was ended at its markers before its end
+		 */
+		public boolean isCut() {
+			return cut;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			int count = read(one, 0, 1);
+			return count <= 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (missing == 0 && tailLeft == 0) {
+				cut = true;
+				return -1;
+			}
+			if (missing == 0) {
+				len = Math.min(len, tailLeft);
+			}
+			int count = in.read(b, off, len);
+			if (count <= 0) {
+				return count;
+			}
+			if (missing == 0) {
+				tailLeft -= count;
+				return count;
+			}
+			for (int i = off; i < off + count; i++) {
+				if (match(b[i]) && missing == 0) {
+					//the last marker ends with this byte
+					int after = Math.min(off + count - i - 1, tail);
+					tailLeft = tail - after;
+					return i + 1 + after - off;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+			long skipped = 0;
+			int count;
+			while (skipped < n && (count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length))) != -1) {
+				skipped += count;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/*
+		 * Advance the markers not found yet by one byte, true if one of
+		 * them ends with it
+		 */
+		private boolean match(byte b) {
+			boolean found = false;
+			for (int i = 0; i < matched.length; i++) {
+				int k = matched[i];
+				if (k == -1) {
+					continue;
+				}
+				while (k > 0 && bytes[i][k] != b) {
+					k = failures[i][k - 1];
+				}
+				if (bytes[i][k] == b) {
+					k++;
+				}
+				if (k == bytes[i].length) {
+					matched[i] = -1;
+					missing--;
+					found = true;
+				} else {
+					matched[i] = k;
+				}
+			}
+			return found;
+		}
+	}
+
+	private static byte[] ascii(String marker) {
+		byte[] ascii = new byte[marker.length()];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) marker.charAt(i);
+		}
+		return ascii;
+	}
+
+	/*
+	 * failure[k] is the length of the longest proper prefix of marker that
+	 * is also a suffix of its first k + 1 bytes
+	 */
+	private static int[] failureTable(byte[] marker) {
+		int[] failure = new int[marker.length];
+		int k = 0;
+		for (int i = 1; i < marker.length; i++) {
+			while (k > 0 && marker[i] != marker[k]) {
+				k = failure[k - 1];
+			}
+			if (marker[i] == marker[k]) {
+				k++;
+			}
+			failure[i] = k;
+		}
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+}
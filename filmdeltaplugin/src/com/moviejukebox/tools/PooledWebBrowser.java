@@ -0,0 +1,142 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that reuses connections and takes compressed pages
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * The WebBrowser at the end of the chain built by WebBrowsers. Pages are
+ * read by WebBrowser.request, with the browser headers, cookies, proxy
+ * and charset handling of YAMJ. The connection it opens for a WebPage is
+ * wrapped in a PageConnection, which asks for a compressed page, makes
+ * conditional requests and cuts the page at its PageMarkers as described
+ * in WebPage. Like every page read by WebBrowser.request, the content has
+ * no line breaks. Downloads are copied from their connection to their file
+ * with FileChannel.transferFrom.
+ *
+ * WebBrowser.request gives no way to pass the page along, so fetch leaves
+ * it in a thread local for the openProxiedConnection call request makes on
+ * the same thread. fetch throws IllegalStateException if request did not
+ * open exactly one connection that way, rather than reading the page
+ * without its PageConnection.
+ *
+ * There is no pool of our own: the JDK keeps HTTP connections alive and
+ * reuses an idle one for the next request to the same host
+ * (http.maxConnections idle connections per host, 5 by default, which
+ * covers the filmdelta.connections limit). It can only do so when the
+ * response was read to its end, so error pages are read to their end too.
+ * Pages cut at their markers are disconnected instead of downloading the
+ * rest.
+ */
+public class PooledWebBrowser extends WebBrowser {
+
+	private static final int TRANSFER_SIZE = 64 * 1024;
+
+	//the page being fetched on this thread
+	private final ThreadLocal<Fetch> fetches = new ThreadLocal<Fetch>();
+
+	@Override
+	public String request(URL url) throws IOException {
+		WebPage page = new WebPage(url, null);
+		fetch(page);
+		return page.getContent();
+	}
+
+	public void fetch(WebPage page) throws IOException {
+		if (page.getFile() != null) {
+			download(page);
+			return;
+		}
+		String content;
+		Fetch fetch = new Fetch(page);
+		fetches.set(fetch);
+		try {
+			content = super.request(page.getUrl());
+		} finally {
+			fetches.remove();
+		}
+		if (!fetch.opened) {
+			throw new IllegalStateException("WebBrowser.request did not open the connection for "
+				+ page.getUrl() + " with openProxiedConnection");
+		}
+		//a disconnected page may just look shorter
+		checkAborted(page);
+		page.setContent(page.isNotModified() ? null : content);
+	}
+
+	/*
+	 * Copy the download from the connection to its file without going
+	 * through a buffer of our own
+	 */
+	private void download(WebPage page) throws IOException {
+		URLConnection connection = super.openProxiedConnection(page.getUrl());
+		if (connection instanceof HttpURLConnection) {
+			page.setConnection((HttpURLConnection) connection);
+			connection = new PageConnection((HttpURLConnection) connection, page);
+		}
+		InputStream in = connection.getInputStream();
+		FileOutputStream out = new FileOutputStream(page.getFile());
+		try {
+			ReadableByteChannel source = Channels.newChannel(in);
+			FileChannel channel = out.getChannel();
+			long position = 0;
+			long transferred;
+			while ((transferred = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+				position += transferred;
+			}
+		} finally {
+			out.close();
+			in.close();
+		}
+		checkAborted(page);
+	}
+
+	private static void checkAborted(WebPage page) throws IOException {
+		if (page.isAborted()) {
+			throw new IOException("Request for " + page.getUrl() + " was aborted");
+		}
+	}
+
+	@Override
+	public URLConnection openProxiedConnection(URL url) throws IOException {
+		Fetch fetch = fetches.get();
+		if (fetch == null) {
+			return super.openProxiedConnection(url);
+		}
+		if (fetch.opened) {
+			throw new IllegalStateException("WebBrowser.request opened a second connection for "
+				+ fetch.page.getUrl());
+		}
+		fetch.opened = true;
+		URLConnection connection = super.openProxiedConnection(url);
+		if (!(connection instanceof HttpURLConnection)) {
+			return connection;
+		}
+		fetch.page.setConnection((HttpURLConnection) connection);
+		return new PageConnection((HttpURLConnection) connection, fetch.page);
+	}
+
+	/*
+	 * A page being fetched, opened once its connection is
+	 */
+	private static class Fetch {
+		final WebPage page;
+		boolean opened;
+
+		Fetch(WebPage page) {
+			this.page = page;
+		}
+	}
+}
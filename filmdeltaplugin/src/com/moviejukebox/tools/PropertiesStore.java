@@ -0,0 +1,219 @@
+/* Filmdelta.se plugin
+ *
+ * String map that is kept in a properties file between runs
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Thread safe map of strings that is read from a properties file the first
+ * time it is used and saved every few changes and when the jukebox exits.
+ *
+ * A save appends only the values changed since the last save to a journal
+ * next to the file (the file name plus .log), which is read after the file.
+ * Once the journal holds more values than the map, the whole map is
+ * written to the file and the journal is deleted, so each value is written
+ * a few times at most however large the map grows. Files are written
+ * outside the lock of the map, gets and puts don't wait for the disk.
+ */
+public class PropertiesStore {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+	private static final int SAVE_INTERVAL = 25;
+
+	private final File file;
+	private final File journal;
+	private final String comment;
+	private final Properties values = new Properties();
+	//values changed since the last save
+	private final Properties changes = new Properties();
+	//held while the files are written, so saves reach the disk in order
+	private final Object writeLock = new Object();
+	private boolean loaded = false;
+	//values in the journal
+	private int journalSize = 0;
+	//the journal can't hold the changes, the next save writes the whole map
+	private boolean rewrite = false;
+
+	/**
+	 * @param file file to keep the values in, null to keep them in
+	 * memory only
+	 */
+	public PropertiesStore(File file, String comment) {
+		this.file = file;
+		this.journal = file == null ? null : new File(file.getPath() + ".log");
+		this.comment = comment;
+	}
+
+	/**
+	 * Save the store when the jukebox exits
+	 */
+	public PropertiesStore saveOnExit() {
+		if (file != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					save();
+				}
+			});
+		}
+		return this;
+	}
+
+	public synchronized String get(String key) {
+		load();
+		return values.getProperty(key);
+	}
+
+	public void put(String key, String value) {
+		boolean save = false;
+		synchronized (this) {
+			load();
+			Object old = values.setProperty(key, value);
+			if (!value.equals(old)) {
+				changes.setProperty(key, value);
+				save = changes.size() >= SAVE_INTERVAL;
+			}
+		}
+		if (save) {
+			save();
+		}
+	}
+
+	public synchronized void remove(String key) {
+		load();
+		if (values.remove(key) != null) {
+			changes.remove(key);
+			rewrite = true;
+		}
+	}
+
+	public synchronized int size() {
+		load();
+		return values.size();
+	}
+
+	/**
+	 * Append the changes to the journal, or write the whole map when the
+	 * journal has grown larger than the map
+	 */
+	public void save() {
+		if (file == null) {
+			return;
+		}
+		synchronized (writeLock) {
+			Properties saved;
+			boolean whole;
+			synchronized (this) {
+				if (changes.isEmpty() && !rewrite) {
+					return;
+				}
+				whole = rewrite || journalSize + changes.size() > values.size();
+				if (whole) {
+					saved = (Properties) values.clone();
+					journalSize = 0;
+					rewrite = false;
+				} else {
+					saved = (Properties) changes.clone();
+					journalSize += changes.size();
+				}
+				changes.clear();
+			}
+			try {
+				if (whole) {
+					write(saved);
+				} else {
+					append(saved);
+				}
+			} catch (IOException e) {
+				logger.severe("PropertiesStore: failed saving " + file + " : " + e.getMessage());
+				synchronized (this) {
+					rewrite = true;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Replace the file with all values, the journal is not needed any more
+	 */
+	private void write(Properties all) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			all.store(out, comment);
+		} finally {
+			out.close();
+		}
+		//the journal holds older values than the new file
+		if (journal.exists() && !journal.delete()) {
+			throw new IOException("Could not delete " + journal);
+		}
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+			throw new IOException("Could not replace " + file);
+		}
+	}
+
+	private void append(Properties changed) throws IOException {
+		File dir = journal.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		OutputStream out = new FileOutputStream(journal, true);
+		try {
+			changed.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (file == null) {
+			return;
+		}
+		read(file, values);
+		Properties journaled = new Properties();
+		read(journal, journaled);
+		values.putAll(journaled);
+		journalSize = journaled.size();
+		logger.finest("PropertiesStore: loaded " + values.size() + " values from " + file);
+	}
+
+	private static void read(File from, Properties into) {
+		if (!from.exists()) {
+			return;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(from);
+			into.load(in);
+		} catch (IOException e) {
+			logger.severe("PropertiesStore: failed reading " + from + " : " + e.getMessage());
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that limits the request rate per host and backs off when
+ * a site starts throttling
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Sends at most filmdelta.ratelimit.&lt;host&gt; requests per second to
+ * a host (host without "www.", 0 or no property means no limit).
+ *
+ * Responses that show the site is throttling us (HTTP 429/503 or, from a
+ * google host, an "unusual traffic" captcha page) lower the rate for the
+ * host and are retried after an exponential backoff. If the site is still
+ * throttling after the last retry an IOException is thrown, so the
+ * throttle page is never mistaken for a real answer. Pages from other
+ * hosts are not searched for the captcha.
+ *
+ * Rate limiters are shared by all instances.
+ */
+public class RateLimitedWebBrowser extends WebBrowserDecorator {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+
+	//captcha page of google
+	private static final String[] THROTTLE_MARKERS = {
+		"detected unusual traffic",
+		"/sorry/index",
+		"google.com/sorry"
+	};
+
+	private static final ConcurrentMap<String, RateLimiter> limiters = new ConcurrentHashMap<String, RateLimiter>();
+
+	private final int retries;
+	private final long backoff;
+
+	public RateLimitedWebBrowser(WebBrowser delegate) {
+		this(delegate,
+			Integer.parseInt(PropertiesUtil.getProperty("filmdelta.ratelimit.retries", "3")),
+			Long.parseLong(PropertiesUtil.getProperty("filmdelta.ratelimit.backoff", "2000")));
+	}
+
+	/**
+	 * @param retries number of retries of a throttled request
+	 * @param backoff wait before the first retry in milliseconds, doubled
+	 * for each following retry
+	 */
+	public RateLimitedWebBrowser(WebBrowser delegate, int retries, long backoff) {
+		super(delegate);
+		this.retries = retries;
+		this.backoff = backoff;
+	}
+
+	/**
+	 * Current request rate for host in requests per second, 0 if the
+	 * host is not rate limited
+	 */
+	public static double getRate(String host) {
+		RateLimiter limiter = getLimiter(host);
+		return limiter == null ? 0 : limiter.getRate();
+	}
+
+	@Override
+	public void fetch(WebPage page) throws IOException {
+		URL url = page.getUrl();
+		RateLimiter limiter = getLimiter(url.getHost());
+		long wait = backoff;
+		for (int attempt = 0; ; attempt++) {
+			boolean throttled;
+			try {
+				if (limiter != null) {
+					limiter.acquire();
+				}
+				fetch(delegate, page);
+				throttled = isThrottlePage(url.getHost(), page.getContent());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting to request " + url);
+			} catch (IOException e) {
+				if (!isThrottleError(e) || attempt >= retries) {
+					throw e;
+				}
+				throttled = true;
+			}
+
+			if (!throttled) {
+				if (limiter != null) {
+					limiter.succeeded();
+				}
+				return;
+			}
+			if (limiter != null) {
+				limiter.throttled();
+			}
+			if (attempt >= retries) {
+				throw new IOException("Throttled by " + url.getHost() + " after " + retries + " retries");
+			}
+			logger.finer("RateLimitedWebBrowser: throttled by " + url.getHost() + ", retrying in " + wait + " ms"
+				+ (limiter != null ? " at " + limiter.getRate() + " requests/s" : ""));
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while backing off from " + url.getHost());
+			}
+			wait *= 2;
+		}
+	}
+
+	static boolean isThrottlePage(String host, String page) {
+		if (page == null || !WebCache.normalizeHost(host).startsWith("google.")) {
+			return false;
+		}
+		for (String marker : THROTTLE_MARKERS) {
+			if (page.indexOf(marker) != -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean isThrottleError(IOException error) {
+		String message = error.getMessage();
+		return message != null
+			&& (message.indexOf("response code: 429") != -1 || message.indexOf("response code: 503") != -1);
+	}
+
+	private static RateLimiter getLimiter(String host) {
+		String key = WebCache.normalizeHost(host);
+		RateLimiter limiter = limiters.get(key);
+		if (limiter == null) {
+			double rate = Double.parseDouble(PropertiesUtil.getProperty("filmdelta.ratelimit." + key,
+				PropertiesUtil.getProperty("filmdelta.ratelimit", defaultRate(key))));
+			if (rate <= 0) {
+				return null;
+			}
+			RateLimiter created = new RateLimiter(rate, Math.max(1, rate));
+			limiter = limiters.putIfAbsent(key, created);
+			if (limiter == null) {
+				limiter = created;
+			}
+		}
+		return limiter;
+	}
+
+	private static String defaultRate(String host) {
+		if (host.equals("google.se")) {
+			return "0.5";
+		} else if (host.equals("filmdelta.se") || host.equals("cdon.se")) {
+			return "4";
+		}
+		return "0";
+	}
+}
@@ -0,0 +1,87 @@
+/* Filmdelta.se plugin
+ *
+ * Adaptive token bucket rate limiter
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that hands out permits at a given rate (permits per second)
+ * with room for a short burst.
+ *
+ * The rate adapts to how the remote site responds: it is halved each time
+ * the site throttles us and grows back slowly towards the maximum rate for
+ * every successful request.
+ */
+public class RateLimiter {
+
+	private static final double NANOS = 1000000000.0;
+
+	private final double maxRate;
+	private final double minRate;
+	private final double burst;
+	private double rate;
+	private double tokens;
+	private long lastRefill;
+
+	public RateLimiter(double maxRate, double burst) {
+		this.maxRate = maxRate;
+		this.minRate = maxRate / 16;
+		this.burst = burst;
+		this.rate = maxRate;
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Wait until a permit is available
+	 */
+	public void acquire() throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			refill();
+			//reserve the permit now, a negative balance is paid back by waiting
+			tokens -= 1;
+			wait = tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS);
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * The site throttled a request, halve the rate
+	 */
+	public synchronized void throttled() {
+		refill();
+		rate = Math.max(minRate, rate / 2);
+	}
+
+	/**
+	 * A request succeeded, let the rate grow back towards the maximum
+	 */
+	public synchronized void succeeded() {
+		refill();
+		rate = Math.min(maxRate, rate + maxRate / 10);
+	}
+
+	/**
+	 * Current rate in permits per second
+	 */
+	public synchronized double getRate() {
+		return rate;
+	}
+
+	public double getMaxRate() {
+		return maxRate;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - lastRefill) / NANOS * rate);
+		lastRefill = now;
+	}
+}
@@ -0,0 +1,59 @@
+/* Filmdelta.se plugin
+ *
+ * Lets concurrent callers with the same key share one piece of work
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs the work for a key only once at a time. Callers that ask for a key
+ * while its work is running wait for it and get the same result (or the
+ * same exception) instead of running the work again.
+ *
+ * Nothing is kept once the work is done, a caller that comes after that
+ * runs the work again. Caching results is left to the caller.
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+	/**
+	 * Result of work, run in the calling thread unless another thread is
+	 * already running the work for key
+	 */
+	public V execute(K key, Callable<V> work) throws Exception {
+		FutureTask<V> task = new FutureTask<V>(work);
+		FutureTask<V> running = inFlight.putIfAbsent(key, task);
+		if (running == null) {
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+			running = task;
+		}
+		try {
+			return running.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+
+	/**
+	 * Number of keys with running work
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+}
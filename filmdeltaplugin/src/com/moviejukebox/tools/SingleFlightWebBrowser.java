@@ -0,0 +1,75 @@
+/* Filmdelta.se plugin
+ *
+ * WebBrowser that lets concurrent requests for the same page share one
+ * fetch
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import com.moviejukebox.tools.Metrics.Outcome;
+
+/**
+ * A request for a page that is already being fetched waits for that fetch
+ * and gets its response, instead of sending the same request again. Pages
+ * read up to different PageMarkers are fetched apart. Conditional requests
+ * carry their own validators and downloads their own file, they are passed
+ * straight through.
+ *
+ * Requests in flight are shared by all instances, so the filmdelta and
+ * cdon plugins share them too. Shared requests are counted as successes
+ * of Metrics.SHARED_REQUEST, the others as misses.
+ */
+public class SingleFlightWebBrowser extends WebBrowserDecorator {
+
+	private static final SingleFlight<String, WebPage> requests = new SingleFlight<String, WebPage>();
+
+	public SingleFlightWebBrowser(WebBrowser delegate) {
+		super(delegate);
+	}
+
+	@Override
+	public void fetch(final WebPage page) throws IOException {
+		if (page.isConditional() || page.getFile() != null) {
+			fetch(delegate, page);
+			return;
+		}
+		String key = page.getUrl().toString();
+		if (page.getMarkers() != null) {
+			key = key + "#" + page.getMarkers().getKey();
+		}
+		final boolean[] fetched = new boolean[1];
+		WebPage response;
+		try {
+			response = requests.execute(key, new Callable<WebPage>() {
+				public WebPage call() throws IOException {
+					fetched[0] = true;
+					fetch(delegate, page);
+					return page;
+				}
+			});
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Failed fetching " + key, e);
+		}
+		if (fetched[0]) {
+			Metrics.getShared().count(Metrics.SHARED_REQUEST, Outcome.MISS);
+		} else {
+			Metrics.getShared().count(Metrics.SHARED_REQUEST, Outcome.SUCCESS);
+			page.setResponse(response);
+		}
+	}
+
+	/**
+	 * Number of different pages being fetched right now
+	 */
+	public static int getInFlightCount() {
+		return requests.size();
+	}
+}
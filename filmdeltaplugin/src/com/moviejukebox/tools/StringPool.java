@@ -0,0 +1,55 @@
+/* Filmdelta.se plugin
+ *
+ * Shared pool of strings that repeat across movies
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one copy of each distinct string, so names and genres that occur
+ * in many movies take memory once instead of once per movie. Strings are
+ * never removed, the pools are meant for values from a limited set.
+ *
+ * A string put in the pool is copied first. Strings cut from a page with
+ * substring can share the characters of the whole page, the copy lets the
+ * page be collected.
+ */
+public class StringPool {
+
+	private static final StringPool people = new StringPool();
+	private static final StringPool genres = new StringPool();
+
+	private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Pool for actors and directors
+	 */
+	public static StringPool getPeople() {
+		return people;
+	}
+
+	public static StringPool getGenres() {
+		return genres;
+	}
+
+	/**
+	 * The pooled string equal to value
+	 */
+	public String intern(String value) {
+		String pooled = values.get(value);
+		if (pooled != null) {
+			return pooled;
+		}
+		pooled = new String(value);
+		String existing = values.putIfAbsent(pooled, pooled);
+		return existing != null ? existing : pooled;
+	}
+
+	public int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,46 @@
+/* Filmdelta.se plugin
+ *
+ * Helpers for comparing movie titles
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.text.Normalizer;
+
+/**
+ * Turns movie titles into a normalized form that can be used as a key
+ * when looking up titles, so "Låt den rätte komma in" and
+ * "lat den ratte komma in!" are the same title.
+ */
+public final class TitleTools {
+
+	private TitleTools() {
+	}
+
+	/**
+	 * Lower case title without accents, with each run of characters that
+	 * are not letters or digits replaced by a single space
+	 */
+	public static String normalize(String title) {
+		String decomposed = Normalizer.normalize(title, Normalizer.Form.NFD);
+		StringBuffer result = new StringBuffer(decomposed.length());
+		boolean space = false;
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK) {
+				continue;
+			}
+			if (Character.isLetterOrDigit(c)) {
+				if (space && result.length() > 0) {
+					result.append(' ');
+				}
+				result.append(Character.toLowerCase(c));
+				space = false;
+			} else {
+				space = true;
+			}
+		}
+		return result.toString();
+	}
+}
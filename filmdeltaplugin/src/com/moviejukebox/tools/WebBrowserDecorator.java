@@ -0,0 +1,89 @@
+/* Filmdelta.se plugin
+ *
+ * Base class for WebBrowsers that add behaviour to another WebBrowser
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * A WebBrowser that passes requests on to another WebBrowser. Subclasses
+ * override fetch(WebPage) to add caching, throttling and so on around the
+ * call to the wrapped browser.
+ *
+ * Requests with PageMarkers only read the start of the page, up to the
+ * markers. Conditional requests send the validators of the page and skip
+ * the body when the server answers 304 Not Modified. The pages are read
+ * by PooledWebBrowser.
+ */
+public abstract class WebBrowserDecorator extends WebBrowser {
+
+	protected final WebBrowser delegate;
+
+	protected WebBrowserDecorator(WebBrowser delegate) {
+		super();
+		this.delegate = delegate;
+	}
+
+	public WebBrowser getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public String request(URL url) throws IOException {
+		return request(url, null);
+	}
+
+	/**
+	 * The page at url, or only the start of it up to markers
+	 *
+	 * @param markers where the page can be cut, null for the whole page
+	 */
+	public String request(URL url, PageMarkers markers) throws IOException {
+		WebPage page = new WebPage(url, markers);
+		fetch(page);
+		return page.getContent();
+	}
+
+	/**
+	 * Fetch the page, subclasses add their behaviour around the fetch from
+	 * the wrapped browser
+	 */
+	public void fetch(WebPage page) throws IOException {
+		fetch(delegate, page);
+	}
+
+	/**
+	 * Requests url from browser, reading only up to markers when browser
+	 * can stream the page. Browsers other than PooledWebBrowser, like the
+	 * test mocks, are always asked for the whole page.
+	 */
+	public static String request(WebBrowser browser, URL url, PageMarkers markers) throws IOException {
+		WebPage page = new WebPage(url, markers);
+		fetch(browser, page);
+		return page.getContent();
+	}
+
+	/**
+	 * Fetches page with browser. Streaming, conditional requests and
+	 * validators need a PooledWebBrowser at the end of the chain, other
+	 * browsers are asked for the whole page with request(URL), or
+	 * downloadImage for a download.
+	 */
+	public static void fetch(WebBrowser browser, WebPage page) throws IOException {
+		if (browser instanceof WebBrowserDecorator) {
+			((WebBrowserDecorator) browser).fetch(page);
+		} else if (browser instanceof PooledWebBrowser) {
+			((PooledWebBrowser) browser).fetch(page);
+		} else if (page.getFile() != null) {
+			browser.downloadImage(page.getFile(), page.getUrl().toString());
+		} else {
+			//no headers to read validators from
+			page.setValidators(null, null);
+			page.setContent(browser.request(page.getUrl()));
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/* Filmdelta.se plugin
+ *
+ * Builds the WebBrowser used by the filmdelta and cdon plugins
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Wraps a WebBrowser with the request coalescing, shared cache, circuit
+ * breakers, hedged requests, rate limits and per host connection limits
+ * used by the filmdelta and cdon plugins.
+ */
+public final class WebBrowsers {
+
+	private static WebBrowser sharedBrowser;
+
+	private WebBrowsers() {
+	}
+
+	/**
+	 * One browser for the filmdelta and cdon plugins, on top of a
+	 * PooledWebBrowser, which takes compressed pages and lets the JDK keep
+	 * its connections alive
+	 */
+	public static synchronized WebBrowser getSharedBrowser() {
+		if (sharedBrowser == null) {
+			sharedBrowser = decorate(new PooledWebBrowser());
+		}
+		return sharedBrowser;
+	}
+
+	public static WebBrowser decorate(WebBrowser browser) {
+		browser = new HostLimitedWebBrowser(browser);
+		//outside the host limit, so a request waiting for its turn or
+		//backing off does not hold a connection of the host
+		browser = new RateLimitedWebBrowser(browser);
+		//send a second request when filmdelta or cdon is slow to answer
+		browser = new HedgedWebBrowser(browser);
+		//fail fast while a site is down
+		browser = new CircuitBreakerWebBrowser(browser);
+		//keep google, filmdelta and cdon pages between runs
+		WebCache cache = WebCache.getSharedCache();
+		if (cache != null) {
+			browser = new CachingWebBrowser(browser, cache);
+		}
+		//concurrent requests for the same page share one fetch
+		return new SingleFlightWebBrowser(browser);
+	}
+
+	/**
+	 * The page at url, read only up to markers if the browser can stream
+	 * the page
+	 */
+	public static String request(WebBrowser browser, String url, PageMarkers markers) throws IOException {
+		return WebBrowserDecorator.request(browser, new URL(url), markers);
+	}
+
+	/**
+	 * Fetch the page with the browser, see WebPage
+	 */
+	public static void fetch(WebBrowser browser, WebPage page) throws IOException {
+		WebBrowserDecorator.fetch(browser, page);
+	}
+}
@@ -0,0 +1,493 @@
+/* Filmdelta.se plugin
+ *
+ * Disk cache for web pages fetched by the filmdelta and cdon plugins
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Disk backed cache of web pages keyed by url.
+ *
+ * Each page is stored in its own file in the cache directory. A small
+ * binary index file keeps url, store time and size of every page in least
+ * recently used order, so the cache can be reopened by the next jukebox run
+ * without reading the pages themselves. When the cache grows above its
+ * maximum size the least recently used pages are removed.
+ *
+ * How long a page is valid depends on its host and is read from the
+ * property filmdelta.cache.ttl.&lt;host&gt; (hours, host without "www.").
+ * Pages from hosts without a ttl are not cached. Google results are kept
+ * for a day by default, a search that didn't find a movie yet is repeated
+ * the next day.
+ *
+ * Only the index is kept under the lock of the cache, the pages are read
+ * and written outside it so parallel scans don't wait for each other's
+ * disk access. A page is written to a temporary file that replaces the
+ * old one, so a page being read is never half written. The index is
+ * written at most once a minute and when the jukebox exits.
+ *
+ * The ETag and Last-Modified headers of a page are kept with it, so an
+ * expired page can be revalidated with a conditional request and renewed
+ * without fetching it again.
+ */
+public class WebCache {
+
+	private static final Logger logger = Logger.getLogger("moviejukebox");
+
+	private static final String INDEX_FILE = "index.dat";
+	private static final int INDEX_VERSION = 2;
+	private static final long SAVE_INTERVAL = 60L * 1000L;
+	private static final long HOUR = 60L * 60L * 1000L;
+
+	private static WebCache sharedCache;
+
+	private final File cacheDir;
+	private final long maxSize;
+	private final Map<String, Long> hostTtl = new HashMap<String, Long>();
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+	private long totalSize = 0;
+	private int unsavedChanges = 0;
+	private boolean loaded = false;
+	private long lastSave = System.currentTimeMillis();
+	private boolean saving = false;
+	//one index write at a time, taken before the lock of the cache
+	private final Object saveLock = new Object();
+
+	private static class Entry {
+		final long stored;
+		final int size;
+		//validators of the page, empty if the server sent none
+		final String eTag;
+		final String lastModified;
+
+		Entry(long stored, int size, String eTag, String lastModified) {
+			this.stored = stored;
+			this.size = size;
+			this.eTag = eTag == null ? "" : eTag;
+			this.lastModified = lastModified == null ? "" : lastModified;
+		}
+	}
+
+	public WebCache(File cacheDir, long maxSize) {
+		this.cacheDir = cacheDir;
+		this.maxSize = maxSize;
+		setTtl("google.se", Long.parseLong(PropertiesUtil.getProperty("filmdelta.cache.ttl.google.se", "24")));
+		setTtl("filmdelta.se", Long.parseLong(PropertiesUtil.getProperty("filmdelta.cache.ttl.filmdelta.se", "168")));
+		setTtl("cdon.se", Long.parseLong(PropertiesUtil.getProperty("filmdelta.cache.ttl.cdon.se", "336")));
+	}
+
+	/**
+	 * The cache shared by the filmdelta and cdon plugins, null if caching
+	 * is turned off with filmdelta.cache.enable=false
+	 */
+	public static synchronized WebCache getSharedCache() {
+		if (sharedCache == null && PropertiesUtil.getProperty("filmdelta.cache.enable", "true").equalsIgnoreCase("true")) {
+			File dir = new File(PropertiesUtil.getProperty("filmdelta.cache.dir", "cache/filmdelta"));
+			long maxSize = Long.parseLong(PropertiesUtil.getProperty("filmdelta.cache.maxsize", "200")) * 1024L * 1024L;
+			sharedCache = new WebCache(dir, maxSize);
+			final WebCache cache = sharedCache;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					cache.save();
+				}
+			});
+		}
+		return sharedCache;
+	}
+
+	/**
+	 * Set time to live in hours for pages from host, 0 turns caching off
+	 * for the host
+	 */
+	public synchronized void setTtl(String host, long hours) {
+		hostTtl.put(normalizeHost(host), Long.valueOf(hours * HOUR));
+	}
+
+	public synchronized long getTtl(String host) {
+		Long ttl = hostTtl.get(normalizeHost(host));
+		return ttl == null ? 0 : ttl.longValue();
+	}
+
+	public boolean isCacheable(URL url) {
+		return getTtl(url.getHost()) > 0;
+	}
+
+	/**
+	 * The cached page for url, or null if the page is not cached or has
+	 * expired
+	 */
+	public String get(String url) {
+		return get(url, false);
+	}
+
+	/**
+	 * The cached page for url also when it has expired, for when the site
+	 * can't be reached. Null if the page is not cached.
+	 */
+	public String getExpired(String url) {
+		return get(url, true);
+	}
+
+	private String get(String url, boolean expired) {
+		synchronized (this) {
+			load();
+			Entry entry = entries.get(url);
+			if (entry == null) {
+				return null;
+			}
+			try {
+				if (!expired && System.currentTimeMillis() - entry.stored > getTtl(new URL(url).getHost())) {
+					return null;
+				}
+			} catch (MalformedURLException e) {
+				return null;
+			}
+		}
+		return readPage(url);
+	}
+
+	public void put(String url, String page) {
+		put(url, page, null, null);
+	}
+
+	/**
+	 * @param eTag ETag header of the page, null if none
+	 * @param lastModified Last-Modified header of the page, null if none
+	 */
+	public void put(String url, String page, String eTag, String lastModified) {
+		byte[] bytes;
+		try {
+			bytes = page.getBytes("UTF-8");
+			synchronized (this) {
+				load();
+			}
+			writeFile(getFile(url), bytes);
+		} catch (IOException e) {
+			logger.finer("WebCache: failed caching page for " + url + " : " + e.getMessage());
+			return;
+		}
+		List<File> evicted;
+		boolean saveNow;
+		synchronized (this) {
+			Entry old = entries.put(url, new Entry(System.currentTimeMillis(), bytes.length, eTag, lastModified));
+			if (old != null) {
+				totalSize -= old.size;
+			}
+			totalSize += bytes.length;
+			evicted = evict();
+			unsavedChanges++;
+			saveNow = isSaveDue();
+		}
+		for (File file : evicted) {
+			file.delete();
+		}
+		if (saveNow) {
+			save();
+		}
+	}
+
+	/**
+	 * ETag of the cached page, also when it has expired. Null if the page
+	 * is not cached or has no ETag.
+	 */
+	public synchronized String getETag(String url) {
+		load();
+		Entry entry = entries.get(url);
+		return entry == null || entry.eTag.length() == 0 ? null : entry.eTag;
+	}
+
+	/**
+	 * Last-Modified of the cached page, also when it has expired. Null if
+	 * the page is not cached or has no Last-Modified.
+	 */
+	public synchronized String getLastModified(String url) {
+		load();
+		Entry entry = entries.get(url);
+		return entry == null || entry.lastModified.length() == 0 ? null : entry.lastModified;
+	}
+
+	/**
+	 * Marks an expired page as valid again after the server said it has not
+	 * been modified.
+	 *
+	 * @return the cached page, null if it is not cached any more
+	 */
+	public String renew(String url) {
+		String page = readPage(url);
+		if (page == null) {
+			return null;
+		}
+		boolean saveNow;
+		synchronized (this) {
+			Entry entry = entries.get(url);
+			if (entry == null) {
+				return null;
+			}
+			entries.put(url, new Entry(System.currentTimeMillis(), entry.size, entry.eTag, entry.lastModified));
+			unsavedChanges++;
+			saveNow = isSaveDue();
+		}
+		if (saveNow) {
+			save();
+		}
+		return page;
+	}
+
+	/**
+	 * Marks the cached page as expired, it is revalidated the next time it
+	 * is requested
+	 */
+	public synchronized void expire(String url) {
+		load();
+		Entry entry = entries.get(url);
+		if (entry != null) {
+			entries.put(url, new Entry(0, entry.size, entry.eTag, entry.lastModified));
+			unsavedChanges++;
+		}
+	}
+
+	public void remove(String url) {
+		synchronized (this) {
+			load();
+			Entry entry = entries.remove(url);
+			if (entry == null) {
+				return;
+			}
+			totalSize -= entry.size;
+			unsavedChanges++;
+		}
+		getFile(url).delete();
+	}
+
+	public synchronized int size() {
+		load();
+		return entries.size();
+	}
+
+	/**
+	 * Write the index file
+	 */
+	public void save() {
+		synchronized (saveLock) {
+			String[] urls;
+			Entry[] saved;
+			int changes;
+			synchronized (this) {
+				saving = false;
+				if (!loaded || unsavedChanges == 0) {
+					return;
+				}
+				//least recently used first
+				urls = entries.keySet().toArray(new String[entries.size()]);
+				saved = entries.values().toArray(new Entry[entries.size()]);
+				changes = unsavedChanges;
+				unsavedChanges = 0;
+				lastSave = System.currentTimeMillis();
+			}
+			if (!writeIndex(urls, saved)) {
+				synchronized (this) {
+					unsavedChanges += changes;
+				}
+			}
+		}
+	}
+
+	/*
+	 * True when the index should be written by the caller, after it let go
+	 * of the lock
+	 */
+	private boolean isSaveDue() {
+		if (saving || unsavedChanges == 0 || System.currentTimeMillis() - lastSave < SAVE_INTERVAL) {
+			return false;
+		}
+		saving = true;
+		return true;
+	}
+
+	private boolean writeIndex(String[] urls, Entry[] saved) {
+		File index = new File(cacheDir, INDEX_FILE);
+		File tmp = new File(cacheDir, INDEX_FILE + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(urls.length);
+			for (int i = 0; i < urls.length; i++) {
+				out.writeUTF(urls[i]);
+				out.writeLong(saved[i].stored);
+				out.writeInt(saved[i].size);
+				out.writeUTF(saved[i].eTag);
+				out.writeUTF(saved[i].lastModified);
+			}
+			out.close();
+			out = null;
+			index.delete();
+			if (!tmp.renameTo(index)) {
+				throw new IOException("could not rename " + tmp);
+			}
+			return true;
+		} catch (IOException e) {
+			logger.severe("WebCache: failed saving cache index " + index + " : " + e.getMessage());
+			return false;
+		} finally {
+			close(out);
+		}
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		cacheDir.mkdirs();
+		File index = new File(cacheDir, INDEX_FILE);
+		if (!index.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+			if (in.readInt() != INDEX_VERSION) {
+				logger.finer("WebCache: unknown index version, starting with an empty cache");
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String url = in.readUTF();
+				Entry entry = new Entry(in.readLong(), in.readInt(), in.readUTF(), in.readUTF());
+				entries.put(url, entry);
+				totalSize += entry.size;
+			}
+			logger.finest("WebCache: loaded " + entries.size() + " cached pages from " + cacheDir);
+		} catch (IOException e) {
+			logger.severe("WebCache: failed reading cache index " + index + " : " + e.getMessage());
+			entries.clear();
+			totalSize = 0;
+		} finally {
+			close(in);
+		}
+	}
+
+	/*
+	 * Remove the least recently used pages from the index until the cache
+	 * fits, their files are deleted by the caller outside the lock
+	 */
+	private List<File> evict() {
+		List<File> evicted = new ArrayList<File>();
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (totalSize > maxSize && entries.size() > 1 && it.hasNext()) {
+			Map.Entry<String, Entry> eldest = it.next();
+			it.remove();
+			totalSize -= eldest.getValue().size;
+			evicted.add(getFile(eldest.getKey()));
+		}
+		return evicted;
+	}
+
+	/*
+	 * The cached file of url, null (and removed from the index) if it
+	 * can't be read
+	 */
+	private String readPage(String url) {
+		try {
+			return readFile(getFile(url));
+		} catch (IOException e) {
+			logger.finer("WebCache: failed reading cached page for " + url + " : " + e.getMessage());
+			remove(url);
+			return null;
+		}
+	}
+
+	private File getFile(String url) {
+		try {
+			MessageDigest md5 = MessageDigest.getInstance("MD5");
+			byte[] digest = md5.digest(url.getBytes("UTF-8"));
+			StringBuffer name = new StringBuffer(digest.length * 2);
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16));
+				name.append(Character.forDigit(b & 0xF, 16));
+			}
+			return new File(cacheDir, name.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, n);
+			}
+			return bytes.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Written next to the old file and renamed over it
+	 */
+	private void writeFile(File file, byte[] bytes) throws IOException {
+		File tmp = File.createTempFile(file.getName(), ".tmp", cacheDir);
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			//windows doesn't rename over an existing file
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException("could not rename " + tmp);
+			}
+		}
+	}
+
+	private static void close(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				//ignore
+			}
+		}
+	}
+
+	static String normalizeHost(String host) {
+		host = host.toLowerCase();
+		return host.startsWith("www.") ? host.substring(4) : host;
+	}
+}
@@ -0,0 +1,189 @@
+/* Filmdelta.se plugin
+ *
+ * A page requested through the WebBrowser decorators
+ *
+ */
+
+package com.moviejukebox.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Request and response of one page fetched through the WebBrowser
+ * decorators.
+ *
+ * A conditional request sends the validators (ETag and Last-Modified) of
+ * the copy we already have, and gets the validators of the current page
+ * back. When the server answers 304 Not Modified the page is marked not
+ * modified and has no content, the copy we have is still valid.
+ *
+ * A page is unchanged when its content is known to be the same as when it
+ * was last fetched, because it was answered from the cache or revalidated.
+ *
+ * A download is a page written to a file instead of read into its content,
+ * for images. Downloads are not cached, shared or hedged, but wait for the
+ * rate and connection limits and circuit breakers of their host like any
+ * other request.
+ */
+public class WebPage {
+
+	private final URL url;
+	private final PageMarkers markers;
+	private boolean conditional = false;
+	private String eTag;
+	private String lastModified;
+	private boolean notModified = false;
+	private boolean unchanged = false;
+	private String content;
+	private File file;
+	private volatile boolean aborted = false;
+	private volatile HttpURLConnection connection;
+
+	/**
+	 * @param markers where the page can be cut, null for the whole page
+	 */
+	public WebPage(URL url, PageMarkers markers) {
+		this.url = url;
+		this.markers = markers;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	public PageMarkers getMarkers() {
+		return markers;
+	}
+
+	/**
+	 * True if the validators should be sent, and the validators of the
+	 * response kept
+	 */
+	public boolean isConditional() {
+		return conditional;
+	}
+
+	public void setConditional(boolean conditional) {
+		this.conditional = conditional;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @param eTag ETag header, null if none
+	 * @param lastModified Last-Modified header, null if none
+	 */
+	public void setValidators(String eTag, String lastModified) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	public void setNotModified(boolean notModified) {
+		this.notModified = notModified;
+	}
+
+	public boolean isUnchanged() {
+		return unchanged;
+	}
+
+	public void setUnchanged(boolean unchanged) {
+		this.unchanged = unchanged;
+	}
+
+	/**
+	 * The page, or only its start if it was read up to markers. Null if the
+	 * page has not been fetched or was not modified.
+	 */
+	public String getContent() {
+		return content;
+	}
+
+	public void setContent(String content) {
+		this.content = content;
+	}
+
+	/**
+	 * The file the page is downloaded to, null if it is read into its
+	 * content
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	public void setFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Give up the request, interrupting its thread can't stop a blocked
+	 * read. Its connection is disconnected, so a request still waiting for
+	 * the response fails right away instead of at the socket timeout. A
+	 * body being read stops at its next read, the JDK doesn't let a
+	 * disconnect break into a read of the body. No connection is opened
+	 * for the request afterwards.
+	 *
+	 * Returns without waiting, the connection is disconnected by another
+	 * thread.
+	 */
+	public void abort() {
+		aborted = true;
+		disconnect(connection);
+	}
+
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/*
+	 * The connection the page is read from, disconnected at once if the
+	 * request was already aborted
+	 */
+	void setConnection(HttpURLConnection connection) throws IOException {
+		this.connection = connection;
+		if (aborted) {
+			disconnect(connection);
+			throw new IOException("Request for " + url + " was aborted");
+		}
+	}
+
+	/*
+	 * disconnect waits for a read of the body in progress, so it is not
+	 * done on the thread that aborts
+	 */
+	private static void disconnect(final HttpURLConnection connection) {
+		if (connection == null) {
+			return;
+		}
+		Thread thread = new Thread("filmdelta-abort") {
+			public void run() {
+				connection.disconnect();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Take the response of another request for the same page
+	 */
+	public void setResponse(WebPage other) {
+		eTag = other.eTag;
+		lastModified = other.lastModified;
+		notModified = other.notModified;
+		unchanged = other.unchanged;
+		content = other.content;
+	}
+}
@@ -3,6 +3,28 @@ package com.moviejukebox.plugin;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import com.moviejukebox.plugin.poster.CdonPosterCacheTest;
+import com.moviejukebox.plugin.poster.CdonShowResolverTest;
+import com.moviejukebox.plugin.poster.PosterPrefetcherTest;
+import com.moviejukebox.tools.CachingWebBrowserTest;
+import com.moviejukebox.tools.CircuitBreakerTest;
+import com.moviejukebox.tools.CircuitBreakerWebBrowserTest;
+import com.moviejukebox.tools.DeadlineTest;
+import com.moviejukebox.tools.FingerprintTest;
+import com.moviejukebox.tools.HedgedWebBrowserTest;
+import com.moviejukebox.tools.HostLimitedWebBrowserTest;
+import com.moviejukebox.tools.LatencyHistogramTest;
+import com.moviejukebox.tools.MetricsTest;
+import com.moviejukebox.tools.MultiPatternMatcherTest;
+import com.moviejukebox.tools.PageMarkersTest;
+import com.moviejukebox.tools.PooledWebBrowserTest;
+import com.moviejukebox.tools.PropertiesStoreTest;
+import com.moviejukebox.tools.RateLimitedWebBrowserTest;
+import com.moviejukebox.tools.RateLimiterTest;
+import com.moviejukebox.tools.SingleFlightWebBrowserTest;
+import com.moviejukebox.tools.StringPoolTest;
+import com.moviejukebox.tools.WebCacheTest;
+
 public class AllTests {
 
 	public static Test suite() {
@@ -10,6 +32,29 @@ public class AllTests {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(FilmwebPluginTest.class);
 		suite.addTestSuite(FilmdeltaSEPluginTest.class);
+		suite.addTestSuite(FilmdeltaRecordStoreTest.class);
+		suite.addTestSuite(NfoIdsTest.class);
+		suite.addTestSuite(CdonPosterCacheTest.class);
+		suite.addTestSuite(CdonShowResolverTest.class);
+		suite.addTestSuite(PosterPrefetcherTest.class);
+		suite.addTestSuite(CachingWebBrowserTest.class);
+		suite.addTestSuite(CircuitBreakerTest.class);
+		suite.addTestSuite(CircuitBreakerWebBrowserTest.class);
+		suite.addTestSuite(DeadlineTest.class);
+		suite.addTestSuite(FingerprintTest.class);
+		suite.addTestSuite(HedgedWebBrowserTest.class);
+		suite.addTestSuite(HostLimitedWebBrowserTest.class);
+		suite.addTestSuite(LatencyHistogramTest.class);
+		suite.addTestSuite(MetricsTest.class);
+		suite.addTestSuite(MultiPatternMatcherTest.class);
+		suite.addTestSuite(PageMarkersTest.class);
+		suite.addTestSuite(PooledWebBrowserTest.class);
+		suite.addTestSuite(PropertiesStoreTest.class);
+		suite.addTestSuite(RateLimitedWebBrowserTest.class);
+		suite.addTestSuite(RateLimiterTest.class);
+		suite.addTestSuite(SingleFlightWebBrowserTest.class);
+		suite.addTestSuite(StringPoolTest.class);
+		suite.addTestSuite(WebCacheTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -3,6 +3,8 @@ package com.moviejukebox.plugin;
 import java.io.IOException;
 import java.net.URL;
 
+import com.moviejukebox.plugin.poster.CdonPosterCache;
+import com.moviejukebox.plugin.poster.CdonShowResolver;
 import com.moviejukebox.tools.WebBrowser;
 
 public class FilmDeltaSEPluginMock extends FilmDeltaSEPlugin {
@@ -14,7 +16,7 @@ public class FilmDeltaSEPluginMock extends FilmDeltaSEPlugin {
 		//change implementation for webbrowser
 		//if offline returns a fixed result
 		//if not offlina calls the 'live' browser in the superclass
-		webBrowser = new WebBrowser() {
+		filmdeltaBrowser = new WebBrowser() {
 			public String request(URL url) throws IOException {
 				if (offline) {
 					return getRequestResult();
@@ -23,6 +25,12 @@ public class FilmDeltaSEPluginMock extends FilmDeltaSEPlugin {
 				}
 			}
 		};
+		webBrowser = filmdeltaBrowser;
+		//keep found filmdelta ids, cdon posters, cdon seasons and parsed pages in memory only
+		idIndex = new FilmdeltaIdIndex(null);
+		cdonPosterCache = new CdonPosterCache(null);
+		cdonShows = new CdonShowResolver(null);
+		recordStore = new FilmdeltaRecordStore(null);
 	}
 
 	public boolean isOffline() {
@@ -0,0 +1,42 @@
+package com.moviejukebox.plugin;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import com.moviejukebox.tools.FileTools;
+
+/**
+ * Unit test for FilmdeltaRecordStore class
+ */
+public class FilmdeltaRecordStoreTest extends TestCase {
+
+	public void testPutAndGet() {
+		FilmdeltaRecordStore store = new FilmdeltaRecordStore(null);
+		FilmdeltaRecord record = FilmdeltaPageParser.parse(FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html")));
+		store.put("15353/den_lilla_sjojungfrun", record);
+		assertEquals(record.toString(), store.get("15353/den_lilla_sjojungfrun").toString());
+		//a record with empty lists and no rating
+		record = FilmdeltaPageParser.parse(FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/barbie_tiggarflickan.html")));
+		store.put("127907/barbie_som_prinsessan_och_tiggarflickan", record);
+		assertEquals(record.toString(), store.get("127907/barbie_som_prinsessan_och_tiggarflickan").toString());
+		assertNull(store.get("1234/unknown"));
+		assertNull(store.getFingerprint("127907/barbie_som_prinsessan_och_tiggarflickan"));
+		store.put("127907/barbie_som_prinsessan_och_tiggarflickan", record, "00ff00ff00ff00ff");
+		assertEquals("00ff00ff00ff00ff", store.getFingerprint("127907/barbie_som_prinsessan_och_tiggarflickan"));
+		assertEquals(record.toString(), store.get("127907/barbie_som_prinsessan_och_tiggarflickan").toString());
+	}
+
+	public void testImdbRating() throws Exception {
+		//the ratings are kept in the directory of the records
+		File dir = File.createTempFile("records", "");
+		dir.delete();
+		File file = new File(dir, "records.properties");
+		FilmdeltaRecordStore store = new FilmdeltaRecordStore(file);
+		assertEquals(-1, store.getImdbRating("15353/den_lilla_sjojungfrun"));
+		store.putImdbRating("15353/den_lilla_sjojungfrun", 80);
+		assertEquals(80, store.getImdbRating("15353/den_lilla_sjojungfrun"));
+		store.save();
+		assertEquals(80, new FilmdeltaRecordStore(file).getImdbRating("15353/den_lilla_sjojungfrun"));
+	}
+}
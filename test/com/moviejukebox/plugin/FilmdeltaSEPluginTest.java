@@ -1,14 +1,26 @@
 package com.moviejukebox.plugin;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import junit.framework.TestCase;
 
 import com.moviejukebox.model.Movie;
+import com.moviejukebox.tools.CachingWebBrowser;
 import com.moviejukebox.tools.FileTools;
+import com.moviejukebox.tools.Fingerprint;
+import com.moviejukebox.tools.Metrics;
 import com.moviejukebox.tools.PropertiesUtil;
+import com.moviejukebox.tools.WebCache;
 
 /**
  * Unit test for FilmDeltaSePlugin class
@@ -63,6 +75,40 @@ public class FilmdeltaSEPluginTest extends TestCase {
 	}
 	
 	
+	public void testGetFilmdeltaIdFromIndex() {
+		filmdeltaPlugin.setRequestResult("<h2 class=hd>Search Results</h2><div><ol><li class=g><h3 class=r><a href=\"http://www.filmdelta.se/filmer/146410/lat_den_ratte_komma_in/\" class=l onmousedown=\"return clk(this.href,\'\',\'\',\'res\',\'1\',\'\')\"><em>");
+		assertEquals("146410/lat_den_ratte_komma_in", filmdeltaPlugin.getFilmdeltaId("Låt den rätte komma in", "2008", 0));
+		//the second lookup doesn't search google
+		filmdeltaPlugin.setRequestResult("<ul><li>no matches");
+		assertEquals("146410/lat_den_ratte_komma_in", filmdeltaPlugin.getFilmdeltaId("lat den ratte komma in!", "2008", 0));
+		assertEquals("UNKNOWN", filmdeltaPlugin.getFilmdeltaId("lat den ratte komma in", "2009", 0));
+	}
+
+	public void testGetFilmdeltaIdFromCatalog() throws Exception {
+		String catalog = "15353\tden_lilla_sjojungfrun\tDen lilla sjöjungfrun\t1989\n"
+			+ "152191\tden_lilla_sjojungfrun_ii\tDen lilla sjöjungfrun II - Havets hemlighet\t2000\n"
+			+ "145614\twall-e\tWall-E\t2008\n"
+			+ "12\tx\tbroken id\t2001\n";
+		filmdeltaPlugin.catalog = new FilmdeltaCatalog(new StringReader(catalog), 0.8f);
+		//google would find nothing
+		filmdeltaPlugin.setRequestResult("<ul><li>no matches");
+		assertEquals("15353/den_lilla_sjojungfrun", filmdeltaPlugin.getFilmdeltaId("den lilla sjojungfrun", "1989", 0));
+		assertEquals("145614/wall-e", filmdeltaPlugin.getFilmdeltaId("Wall E", "UNKNOWN", 0));
+		assertEquals("UNKNOWN", filmdeltaPlugin.getFilmdeltaId("apo panda", "", 0));
+		//catalog ids are validated like ids from google
+		assertEquals("UNKNOWN", filmdeltaPlugin.getFilmdeltaId("broken id", "2001", 0));
+	}
+
+	public void testScanNFOAddsIdToIndex() throws Exception {
+		File indexFile = File.createTempFile("filmdeltaids", ".properties");
+		FilmdeltaIdIndex index = new FilmdeltaIdIndex(indexFile);
+		filmdeltaPlugin.idIndex = index;
+		movie.setTitle("Den lilla sjöjungfrun");
+		filmdeltaPlugin.scanNFO(FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.nfo")), movie);
+		index.save();
+		assertEquals("15353/den_lilla_sjojungfrun", new FilmdeltaIdIndex(indexFile).get("den lilla sjojungfrun", "UNKNOWN", -1));
+	}
+
 	public void testGetFilmdeltaIdNoMatch() {
 		filmdeltaPlugin.setRequestResult("<b>apo panda site:filmdelta.se/filmer</b> - did not match any documents.  <p style=margin-top:1em>Suggestions:<ul><li>Make sure all words are spelled correctly.<li>Try");
 		assertEquals("UNKNOWN", filmdeltaPlugin.getFilmdeltaId("apo panda", "", 0));
@@ -84,6 +130,19 @@ public class FilmdeltaSEPluginTest extends TestCase {
 		assertEquals("John Musker / Ron Clements", movie.getDirector());
 		//assertEquals("René Auberjonois, Christopher Daniel Barnes, ", movie.getCast().toString().substring(0, 46));
 	}
+
+	public void testAverageRatingDoesNotDrift() {
+		filmdeltaPlugin.preferredRating = "average";
+		String html = FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html"));
+		//imdb gave 80 when the movie was scanned, filmdelta has 76
+		filmdeltaPlugin.recordStore.putImdbRating("15353/den_lilla_sjojungfrun", 80);
+		movie.setRating(80);
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun", html);
+		assertEquals(78, movie.getRating());
+		//applying the same record again, like an import does, keeps the average
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun", html);
+		assertEquals(78, movie.getRating());
+	}
 	
 	public void testUpdateFilmdeltaMediaInfoMovieWithIncompleteMovie() {
 		//set up
@@ -101,6 +160,186 @@ public class FilmdeltaSEPluginTest extends TestCase {
 		assertEquals("Flickornas öden korsas när prinsessan An", movie.getPlot().substring(0, 40));
 		assertEquals("UNKNOWN", movie.getDirector());
 	}
+	public void testParseFilmdeltaPage() {
+		File resultFile = new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html");
+		FilmdeltaRecord record = FilmdeltaPageParser.parse(FileTools.readFileToString(resultFile));
+		assertEquals("Den lilla sjöjungfrun", record.getTitle());
+		assertEquals("The Little Mermaid", record.getOriginalTitle());
+		assertEquals("[Animerad, undervattenskomedi]", record.getGenres().toString());
+		assertEquals("[John Musker, Ron Clements]", record.getDirectors().toString());
+		assertEquals("Christopher Daniel Barnes", record.getCast().get(1));
+		assertEquals("USA", record.getCountry());
+		assertEquals("1989", record.getYear());
+		assertEquals("82", record.getRuntime());
+		assertEquals(76, record.getRating());
+	}
+
+	public void testParseFilmdeltaPagePrefix() throws Exception {
+		String html = FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html"));
+		String prefix = FilmDeltaSEPlugin.FILMDELTA_PAGE.read(new StringReader(html));
+		assertTrue(prefix.length() < html.length());
+		//the start of the page holds all movie data
+		assertEquals(FilmdeltaPageParser.parse(html).toString(), FilmdeltaPageParser.parse(prefix).toString());
+	}
+
+	public void testUpdateFilmdeltaMediaInfoUnchangedPage() throws Exception {
+		File cacheDir = File.createTempFile("filmdeltacache", "");
+		cacheDir.delete();
+		filmdeltaPlugin.filmdeltaBrowser = new CachingWebBrowser(filmdeltaPlugin.filmdeltaBrowser, new WebCache(cacheDir, 1024 * 1024));
+		filmdeltaPlugin.setRequestResult(FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html")));
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun");
+		assertEquals("Den lilla sjöjungfrun", movie.getTitle());
+		//the cached page is unchanged so the stored record is used instead of parsing it
+		List<String> none = new ArrayList<String>();
+		filmdeltaPlugin.recordStore.put("15353/den_lilla_sjojungfrun", new FilmdeltaRecord("Stored title", "UNKNOWN", "UNKNOWN",
+			none, none, none, "UNKNOWN", "UNKNOWN", -1, "UNKNOWN"));
+		movie = new Movie();
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun");
+		assertEquals("Stored title", movie.getTitle());
+	}
+
+	public void testUpdateFilmdeltaMediaInfoSameFingerprint() {
+		String html = FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html"));
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun", html);
+		assertEquals(Fingerprint.of(html), filmdeltaPlugin.recordStore.getFingerprint("15353/den_lilla_sjojungfrun"));
+		
+		//the same page again doesn't change the movie
+		final AtomicInteger setterCalls = new AtomicInteger();
+		Movie scanned = new Movie() {
+			public void setTitle(String title) { setterCalls.incrementAndGet(); super.setTitle(title); }
+			public void setPlot(String plot) { setterCalls.incrementAndGet(); super.setPlot(plot); }
+			public void setDirector(String director) { setterCalls.incrementAndGet(); super.setDirector(director); }
+			public void setCountry(String country) { setterCalls.incrementAndGet(); super.setCountry(country); }
+			public void setYear(String year) { setterCalls.incrementAndGet(); super.setYear(year); }
+			public void setRuntime(String runtime) { setterCalls.incrementAndGet(); super.setRuntime(runtime); }
+		};
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(scanned, "15353/den_lilla_sjojungfrun", html);
+		int firstScan = setterCalls.get();
+		assertTrue(firstScan > 0);
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(scanned, "15353/den_lilla_sjojungfrun", html);
+		assertEquals(firstScan, setterCalls.get());
+		
+		//a changed page is parsed again
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(scanned, "15353/den_lilla_sjojungfrun", html.replace("Den lilla sj", "Den stora sj"));
+		assertEquals("Den stora sjöjungfrun", scanned.getTitle());
+	}
+	
+	public void testImportFilmdeltaPages() throws Exception {
+		assertEquals("15353/den_lilla_sjojungfrun", SavedFilmdeltaPages.makeFilmdeltaId("pages/15353_den_lilla_sjojungfrun.html"));
+		assertEquals("15353/den_lilla_sjojungfrun", SavedFilmdeltaPages.makeFilmdeltaId("15353/den_lilla_sjojungfrun.htm"));
+		assertNull(SavedFilmdeltaPages.makeFilmdeltaId("den_lilla_sjojungfrun.html"));
+		assertEquals("15353/d&#246;d", SavedFilmdeltaPages.makeFilmdeltaId("15353/d&#246;d.html"));
+		
+		File fixtures = new File("test/FilmDeltaSEPluginTestFixtures");
+		File dir = File.createTempFile("filmdeltapages", "");
+		dir.delete();
+		new File(dir, "127907").mkdirs();
+		copy(new File(fixtures, "den_lilla_sjojungfrun.html"), new File(dir, "15353_den_lilla_sjojungfrun.html"));
+		copy(new File(fixtures, "barbie_tiggarflickan.html"), new File(dir, "127907/barbie_som_prinsessan_och_tiggarflickan.html"));
+		copy(new File(fixtures, "den_lilla_sjojungfrun.nfo"), new File(dir, "15353_den_lilla_sjojungfrun.nfo"));
+		
+		Movie barbie = new Movie();
+		barbie.setId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID, "127907/barbie_som_prinsessan_och_tiggarflickan");
+		Movie other = new Movie();
+		other.setTitle("Other");
+		//found by its title in the id index
+		Movie indexed = new Movie();
+		indexed.setTitle("lilla sjojungfrun");
+		indexed.setYear("1989");
+		filmdeltaPlugin.idIndex.put("lilla sjojungfrun", "1989", indexed.getSeason(), "15353/den_lilla_sjojungfrun");
+		List<Movie> movies = new ArrayList<Movie>();
+		movies.add(barbie);
+		movies.add(other);
+		movies.add(indexed);
+		//no page is requested
+		filmdeltaPlugin.setRequestResult(null);
+		assertEquals(2, filmdeltaPlugin.importFilmdeltaPages(dir, movies));
+		assertEquals("Barbie som prinsessan och tiggarflickan", barbie.getTitle());
+		assertEquals("Other", other.getTitle());
+		assertEquals(Movie.UNKNOWN, other.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
+		assertEquals("15353/den_lilla_sjojungfrun", indexed.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
+		assertEquals("Den lilla sjöjungfrun", indexed.getTitle());
+		assertEquals("Den lilla sjöjungfrun", filmdeltaPlugin.recordStore.get("15353/den_lilla_sjojungfrun").getTitle());
+		
+		//the same pages in a zip file, refreshing a movie
+		File zip = File.createTempFile("filmdeltapages", ".zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		out.putNextEntry(new ZipEntry("pages/15353_den_lilla_sjojungfrun.html"));
+		out.write(FileTools.readFileToString(new File(fixtures, "den_lilla_sjojungfrun.html")).replace("Den lilla sj", "Den stora sj").getBytes("UTF-8"));
+		out.closeEntry();
+		out.close();
+		Movie mermaid = new Movie();
+		mermaid.setId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID, "15353/den_lilla_sjojungfrun");
+		movies.add(mermaid);
+		assertEquals(1, filmdeltaPlugin.importFilmdeltaPages(zip, movies));
+		assertEquals("Den stora sjöjungfrun", mermaid.getTitle());
+		assertEquals("1989", mermaid.getYear());
+		zip.delete();
+	}
+	
+	private static void copy(File from, File to) throws IOException {
+		FileOutputStream out = new FileOutputStream(to);
+		out.write(FileTools.readFileToString(from).getBytes("UTF-8"));
+		out.close();
+	}
+	
+	public void testParsedPagesShareStrings() {
+		//pages parsed apart share their names and genres
+		String html = FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html"));
+		FilmdeltaRecord first = FilmdeltaPageParser.parse(html);
+		FilmdeltaRecord second = FilmdeltaPageParser.parse(new String(html));
+		assertSame(first.getCast().get(0), second.getCast().get(0));
+		assertSame(first.getDirectors().get(0), second.getDirectors().get(0));
+		assertSame(first.getGenres().get(0), second.getGenres().get(0));
+		FilmdeltaRecordStore store = new FilmdeltaRecordStore(null);
+		store.put("15353/den_lilla_sjojungfrun", first);
+		assertSame(first.getCast().get(0), store.get("15353/den_lilla_sjojungfrun").getCast().get(0));
+	}
+	
+	public void testMetricsCountScanPhases() {
+		Metrics metrics = new Metrics();
+		filmdeltaPlugin.metrics = metrics;
+		//the search finds nothing so the details page is never fetched
+		filmdeltaPlugin.setRequestResult("");
+		filmdeltaPlugin.getCDONPosterURL("Mora Träsk", 0);
+		assertEquals(1, metrics.getMissCount(Metrics.CDON_SEARCH));
+		assertEquals(0, metrics.getMissCount(Metrics.CDON_DETAIL));
+		filmdeltaPlugin.updateFilmdeltaMediaInfo(movie, "15353/den_lilla_sjojungfrun",
+			FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html")));
+		assertEquals(1, metrics.getSuccessCount(Metrics.FILMDELTA_PARSE));
+		assertTrue(metrics.getSummary().indexOf(Metrics.FILMDELTA_PARSE + ": 1 success, 0 miss, 0 error, p50 ") != -1);
+	}
+
+	public void testSharesComponentsLazily() throws Exception {
+		final FilmDeltaSEPlugin first = new FilmDeltaSEPlugin();
+		FilmDeltaSEPlugin second = new FilmDeltaSEPlugin();
+		//no tv show scanned yet
+		assertNull(first.tvdb);
+		assertSame(FilmdeltaConfig.getSharedConfig().getRating(), first.preferredRating);
+		assertSame(first.getCatalog(), second.getCatalog());
+		//threads scanning tv shows at the same time get the same tvdb plugin
+		final List<TheTvDBPlugin> found = new ArrayList<TheTvDBPlugin>();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					TheTvDBPlugin tvdb = first.getTvdb();
+					synchronized (found) {
+						found.add(tvdb);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(threads.length, found.size());
+		for (TheTvDBPlugin tvdb : found) {
+			assertSame(second.getTvdb(), tvdb);
+		}
+	}
+
 	public void testScanTvShow() {
 		//this test makes an online call to the tvdb - no mocking of that as of now
 		movie.setTitle("dexter");
@@ -115,6 +354,69 @@ public class FilmdeltaSEPluginTest extends TestCase {
 		//assertEquals("146818/dexter-sasong_1", movie.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
 	}
 
+	public void testScanSearchesCdonWithFinalTitle() {
+		final List<String> searches = new ArrayList<String>();
+		FilmDeltaSEPluginMock plugin = new FilmDeltaSEPluginMock() {
+			protected String getFilmdeltaId(String movieName, String year, int season) {
+				return "15353/den_lilla_sjojungfrun";
+			}
+			protected String getCDONPosterURL(String movieName, int season) {
+				synchronized (searches) {
+					searches.add(movieName);
+				}
+				return "http://cdon.se/poster/" + movieName;
+			}
+		};
+		plugin.getcdonposter = true;
+		plugin.setRequestResult(FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html")));
+		movie.setTitle("lilla sjojungfrun");
+		assertTrue(plugin.scan(movie));
+		//CDON is only searched with the title from the filmdelta page
+		assertEquals("Den lilla sjöjungfrun", movie.getTitle());
+		assertEquals("[Den lilla sjöjungfrun]", searches.toString());
+		assertEquals("http://cdon.se/poster/Den lilla sjöjungfrun", movie.getPosterURL());
+		//also when the filmdelta id comes from the nfo
+		searches.clear();
+		movie = new Movie();
+		movie.setId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID, "15353/den_lilla_sjojungfrun");
+		assertTrue(plugin.scan(movie));
+		assertEquals("[Den lilla sjöjungfrun]", searches.toString());
+		assertEquals("http://cdon.se/poster/Den lilla sjöjungfrun", movie.getPosterURL());
+	}
+
+	public void testScanDeadlineKeepsPosterSearch() {
+		final List<String> searches = new ArrayList<String>();
+		FilmDeltaSEPluginMock plugin = new FilmDeltaSEPluginMock() {
+			protected String getFilmdeltaId(String movieName, String year, int season) {
+				return "15353/den_lilla_sjojungfrun";
+			}
+			protected String getCDONPosterURL(String movieName, int season) {
+				boolean early;
+				synchronized (searches) {
+					searches.add(movieName);
+					early = searches.size() == 1;
+				}
+				if (early) {
+					//slower than the deadline
+					try {
+						Thread.sleep(2000);
+					} catch (InterruptedException e) {
+						return Movie.UNKNOWN;
+					}
+				}
+				return "http://cdon.se/poster/" + movieName;
+			}
+		};
+		plugin.getcdonposter = true;
+		plugin.scanDeadline = 50;
+		plugin.setRequestResult(FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.html")));
+		movie.setTitle("Den lilla sjöjungfrun");
+		assertTrue(plugin.scan(movie));
+		//the early search was given up, the movie still gets its poster
+		assertEquals(2, searches.size());
+		assertEquals("http://cdon.se/poster/Den lilla sjöjungfrun", movie.getPosterURL());
+	}
+
 	public void testScanNFO() {
         String nfo_mermaid = 
         	FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/den_lilla_sjojungfrun.nfo"));
@@ -122,6 +424,12 @@ public class FilmdeltaSEPluginTest extends TestCase {
 		assertEquals("15353/den_lilla_sjojungfrun", movie.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
 	}
 	
+	public void testScanNFOCdonUrl() {
+		filmdeltaPlugin.scanNFO("http://cdon.se/film/mora_trask-406535", movie);
+		assertEquals("http://cdon.se/film/mora_trask-406535", movie.getId(FilmDeltaSEPlugin.CDON_PLUGIN_ID));
+		assertEquals(Movie.UNKNOWN, movie.getId(FilmDeltaSEPlugin.FILMDELTA_PLUGIN_ID));
+	}
+	
 	public void testScanNFOAndGetFilmdeltaId() {
 		//this only works in online mode
 		if(!filmdeltaPlugin.isOffline()) {
@@ -200,6 +508,23 @@ public class FilmdeltaSEPluginTest extends TestCase {
 			assertEquals("UNKNOWN", filmdeltaPlugin.getCdonMovieDetailsPage("kung fu panda", "nourl"));
 		}
 	}
+	public void testGetCdonPosterFromCache() {
+		if(filmdeltaPlugin.isOffline()) {
+			//search result and details page in one, the mock returns it for both requests
+			String cdonPage = "<img class=\"icon\" src=\"/media-static/images/icon/section-movie.gif\" alt=\"\" /><h2>Film - 1 tr&#228;ff</h2>" +
+				"<table class=\"product-list\"><tr><td class=\"title\"><a href=\"http://cdon.se/film/mora_trask-406535\" rel=\"imagetooltip\">Mora Tr&#228;sk</a></td></tr></table>" +
+				"<div class=\"product-image-container\"><img src=\"/media-dynamic/images/product/000/406/406535.jpg\" alt=\"Mora Tr&#228;sk\" class=\"product\" />";
+			//a title CDON doesn't have is remembered as a miss
+			filmdeltaPlugin.setRequestResult("");
+			assertEquals("UNKNOWN", filmdeltaPlugin.getCDONPosterURL("mora träsk", 0));
+			filmdeltaPlugin.setRequestResult(cdonPage);
+			assertEquals("UNKNOWN", filmdeltaPlugin.getCDONPosterURL("Mora Träsk", 0));
+			//found posters are remembered as well
+			assertEquals("http://cdon.se/media-dynamic/images/product/000/406/406535.jpg", filmdeltaPlugin.getCDONPosterURL("mora träsk", 1));
+			filmdeltaPlugin.setRequestResult("");
+			assertEquals("http://cdon.se/media-dynamic/images/product/000/406/406535.jpg", filmdeltaPlugin.getCDONPosterURL("mora träsk", 1));
+		}
+	}
 	public void testExtractCdonPosterUrlSuccessLargeCover() {
 		String cdonMoviePage = "<div class=\"product-image-container\">" + 
 			"<a href=\"/media-dynamic/images/product/00/04/06/24/72/3/77cbe33d-3352-43b2-b460-4370582448df.jpg\" rel=\"imageviewer\"><img src=\"/media-dynamic/images/product/00/04/06/24/72/1/84f4f42c-87b8-4991-b4b7-ea6b1b8ff818.jpg\" alt=\"En F&#246;rlorad V&#228;rld\" class=\"product\" /></a>" + 
@@ -217,5 +542,10 @@ public class FilmdeltaSEPluginTest extends TestCase {
 	public void testExtractCdonPosterUrlFail() {
 		filmdeltaPlugin.setRequestResult("no cover found here");
 		assertEquals("UNKNOWN", filmdeltaPlugin.extractCdonPosterUrl("test", "http://cdon.se"));
-	}	
+	}
+	public void testExtractCdonPosterUrlNotJpg() {
+		String cdonMoviePage = "<p><a href=\"/media-dynamic/images/product/000/406/406535.gif\" rel=\"imageviewer\">St&#246;rre framsida</a></p>";
+		assertEquals("UNKNOWN", filmdeltaPlugin.extractCdonPosterUrl("test", cdonMoviePage));
+		assertEquals("UNKNOWN", filmdeltaPlugin.extractCdonPosterUrl("test", "<p>St&#246;rre framsida"));
+	}
 }
@@ -0,0 +1,28 @@
+package com.moviejukebox.plugin;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import com.moviejukebox.tools.FileTools;
+
+/**
+ * Unit test for NfoIds class
+ */
+public class NfoIdsTest extends TestCase {
+
+	public void testScan() throws Exception {
+		String nfo_walle = 
+			FileTools.readFileToString(new File("test/FilmDeltaSEPluginTestFixtures/bulgur-walle.nfo"));
+		NfoIds ids = NfoIds.scan(nfo_walle);
+		assertEquals("tt0910970", ids.getImdbId());
+		assertNull(ids.getCdonUrl());
+		
+		ids = NfoIds.scan("http://www.imdb.com/Title?0097757\n"
+				+ "<a href=\"http://cdon.se/film/mora_trask-406535\">cdon</a>\n"
+				+ "http://www.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/ mer text");
+		assertEquals("tt0097757", ids.getImdbId());
+		assertEquals("15353/den_lilla_sjojungfrun", ids.getFilmdeltaId());
+		assertEquals("http://cdon.se/film/mora_trask-406535", ids.getCdonUrl());
+	}
+}
@@ -0,0 +1,26 @@
+package com.moviejukebox.plugin.poster;
+
+import junit.framework.TestCase;
+
+import com.moviejukebox.model.Movie;
+
+/**
+ * Unit test for CdonPosterCache class
+ */
+public class CdonPosterCacheTest extends TestCase {
+
+	public void testPutAndGet() {
+		CdonPosterCache cache = new CdonPosterCache(null);
+		assertNull(cache.get("Mora Träsk", -1));
+		cache.put("Mora Träsk", -1, "http://cdon.se/media-dynamic/images/product/000/406/406535.jpg", "http://cdon.se/film/mora_trask-406535");
+		assertEquals("http://cdon.se/media-dynamic/images/product/000/406/406535.jpg", cache.get("mora träsk", -1));
+		//a hit also tells the movie page, the id of the cdon plugin
+		assertEquals("http://cdon.se/film/mora_trask-406535", cache.getCdonUrl("Mora Träsk", -1));
+		//seasons are cached apart
+		assertNull(cache.get("Mora Träsk", 1));
+		//a search that found nothing
+		cache.put("Okänd film", -1, Movie.UNKNOWN, Movie.UNKNOWN);
+		assertEquals(Movie.UNKNOWN, cache.get("Okänd film", -1));
+		assertNull(cache.getCdonUrl("Okänd film", -1));
+	}
+}
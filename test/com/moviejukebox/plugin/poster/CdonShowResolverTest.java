@@ -0,0 +1,38 @@
+package com.moviejukebox.plugin.poster;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.moviejukebox.tools.WebBrowser;
+
+/**
+ * Unit test for CdonShowResolver class
+ */
+public class CdonShowResolverTest extends TestCase {
+
+	public void testGetSeasonUrl() throws Exception {
+		final AtomicInteger searches = new AtomicInteger();
+		WebBrowser browser = new WebBrowser() {
+			public String request(URL url) throws IOException {
+				searches.incrementAndGet();
+				return "<img class=\"icon\" src=\"/media-static/images/icon/section-movie.gif\" alt=\"\" /><table class=\"product-list\">" +
+					"<tr><td class=\"title\"><a href=\"http://cdon.se/film/dexter_-_s%c3%a4song_1-3_box-1000\">Dexter - S&#228;song 1-3 Box</a></td></tr>" +
+					"<tr><td class=\"title\"><a href=\"http://cdon.se/film/dexter_-_s%c3%a4song_2-1002\">Dexter - S&#228;song 2</a></td></tr>" +
+					"<tr><td class=\"title\"><a href=\"http://cdon.se/film/dexter_-_s%c3%a4song_1_(4_disc)-704895\">Dexter - S&#228;song 1 (4 disc)</a></td></tr>" +
+					"<tr><td class=\"title\"><a href=\"http://cdon.se/film/dexter_-_s%c3%a4song_1_blu-ray-1001\">Dexter - S&#228;song 1 (Blu-ray)</a></td></tr>" +
+					"</table>";
+			}
+		};
+		CdonShowResolver resolver = new CdonShowResolver(null);
+		assertEquals("http://cdon.se/film/dexter_-_s%c3%a4song_1_(4_disc)-704895", resolver.getSeasonUrl(browser, "Dexter", 1));
+		assertEquals("http://cdon.se/film/dexter_-_s%c3%a4song_2-1002", resolver.getSeasonUrl(browser, "dexter", 2));
+		assertEquals("UNKNOWN", resolver.getSeasonUrl(browser, "Dexter", 3));
+		//one search for all seasons
+		assertEquals(1, searches.get());
+		assertEquals("http://cdon.se/film/dexter_-_s%c3%a4song_2-1002", resolver.getOtherSeasonUrl("http://cdon.se/film/dexter_-_s%c3%a4song_1_(4_disc)-704895", 2));
+		assertNull(resolver.getOtherSeasonUrl("http://cdon.se/film/mora_trask-406535", 2));
+	}
+}
@@ -0,0 +1,85 @@
+package com.moviejukebox.plugin.poster;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.moviejukebox.tools.FileTools;
+import com.moviejukebox.tools.WebBrowser;
+import com.moviejukebox.tools.WebBrowserDecorator;
+import com.moviejukebox.tools.WebPage;
+
+/**
+ * Unit test for PosterPrefetcher class
+ */
+public class PosterPrefetcherTest extends TestCase {
+
+	private File dir;
+
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("posterstore", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	public void testPrefetch() throws Exception {
+		File poster = createPoster("poster.jpg");
+		File copy = createPoster("copy.jpg");
+		PosterPrefetcher prefetcher = new PosterPrefetcher(new File(dir, "store"), new WebBrowser(), 2, 10);
+		String posterUrl = poster.toURI().toURL().toString();
+		String copyUrl = copy.toURI().toURL().toString();
+		String missingUrl = new File(dir, "missing.jpg").toURI().toURL().toString();
+		assertTrue(prefetcher.prefetch(posterUrl));
+		assertTrue(prefetcher.prefetch(copyUrl));
+		assertTrue(prefetcher.prefetch(missingUrl));
+		for (int i = 0; i < 100 && prefetcher.getPendingCount() > 0; i++) {
+			Thread.sleep(20);
+		}
+		assertNotNull(prefetcher.getFile(posterUrl));
+		//stored by content, the copy is the same file
+		assertEquals(prefetcher.getFile(posterUrl), prefetcher.getFile(copyUrl));
+		assertEquals("not really a jpg", FileTools.readFileToString(prefetcher.getFile(posterUrl)));
+		assertNull(prefetcher.getFile(missingUrl));
+		//stored posters are not fetched again
+		assertFalse(prefetcher.prefetch(posterUrl));
+	}
+
+	public void testGetLocalUrl() throws Exception {
+		String posterUrl = createPoster("poster.jpg").toURI().toURL().toString();
+		final List<String> downloads = new ArrayList<String>();
+		//the downloads go through the browser like the pages
+		WebBrowser browser = new WebBrowserDecorator(new WebBrowser()) {
+			public void fetch(WebPage page) throws IOException {
+				downloads.add(page.getUrl() + " to " + (page.getFile() != null));
+				super.fetch(page);
+			}
+		};
+		PosterPrefetcher prefetcher = new PosterPrefetcher(new File(dir, "store"), browser, 2, 10);
+		//the movie gets the remote url while the poster is downloaded
+		assertEquals(posterUrl, prefetcher.getLocalUrl(posterUrl));
+		for (int i = 0; i < 100 && prefetcher.getPendingCount() > 0; i++) {
+			Thread.sleep(20);
+		}
+		//and the stored copy once it is there
+		String localUrl = prefetcher.getLocalUrl(posterUrl);
+		assertEquals(prefetcher.getFile(posterUrl).toURI().toURL().toString(), localUrl);
+		assertFalse(localUrl.equals(posterUrl));
+		assertEquals(1, downloads.size());
+		assertEquals(posterUrl + " to true", downloads.get(0));
+		//posters that can't be stored keep their url
+		String missingUrl = new File(dir, "missing.jpg").toURI().toURL().toString();
+		assertEquals(missingUrl, prefetcher.getLocalUrl(missingUrl));
+	}
+
+	private File createPoster(String name) throws Exception {
+		File file = new File(dir, name);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("not really a jpg".getBytes("UTF-8"));
+		out.close();
+		return file;
+	}
+}
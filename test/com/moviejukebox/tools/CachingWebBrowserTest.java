@@ -0,0 +1,92 @@
+package com.moviejukebox.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for CachingWebBrowser class
+ */
+public class CachingWebBrowserTest extends TestCase {
+
+	private static final String PAGE_URL = "http://www.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/";
+
+	private WebCache cache;
+
+	protected void setUp() throws Exception {
+		File cacheDir = File.createTempFile("filmdeltacache", "");
+		cacheDir.delete();
+		cache = new WebCache(cacheDir, 1024 * 1024);
+	}
+
+	public void testCachingWebBrowser() throws Exception {
+		final String[] result = {"first page"};
+		WebBrowser browser = new CachingWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				return result[0];
+			}
+		}, cache);
+		assertEquals("first page", browser.request(PAGE_URL));
+		//second request is answered from the cache
+		result[0] = "second page";
+		assertEquals("first page", browser.request(PAGE_URL));
+		//a cached page also answers requests for its start
+		assertEquals("first page", WebBrowsers.request(browser, PAGE_URL, new PageMarkers(0, "first")));
+		//hosts without a ttl are not cached
+		assertEquals("second page", browser.request("http://www.imdb.com/title/tt0097757/"));
+	}
+
+	public void testNotCachedWhenMissing() throws Exception {
+		final String[] result = {"<html>inga träffar</html>"};
+		WebBrowser browser = new CachingWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				return result[0];
+			}
+		}, cache);
+		String search = "http://www.google.se/search?q=den+lilla+sjojungfrun";
+		PageMarkers markers = new PageMarkers(0, "www.filmdelta.se/filmer/").notCachedWhenMissing();
+		//a result without the link is fetched again
+		assertEquals("<html>inga träffar</html>", WebBrowsers.request(browser, search, markers));
+		result[0] = "<a href=\"http://www.filmdelta.se/filmer/15353/\">";
+		assertEquals(result[0], WebBrowsers.request(browser, search, markers));
+		//a result with the link is cached
+		String found = result[0];
+		result[0] = "<html>inga träffar</html>";
+		assertEquals(found, WebBrowsers.request(browser, search, markers));
+	}
+
+	public void testCachingWebBrowserRevalidates() throws Exception {
+		final AtomicInteger bodies = new AtomicInteger();
+		//answers 304 to requests for the page it sent before
+		WebBrowser server = new WebBrowserDecorator(null) {
+			public void fetch(WebPage page) {
+				if ("\"v1\"".equals(page.getETag())) {
+					page.setNotModified(true);
+					page.setContent(null);
+				} else {
+					bodies.incrementAndGet();
+					page.setValidators("\"v1\"", null);
+					page.setContent("first page");
+				}
+			}
+		};
+		WebBrowser browser = new CachingWebBrowser(server, cache);
+		WebPage page = new WebPage(new URL(PAGE_URL), null);
+		WebBrowsers.fetch(browser, page);
+		assertEquals("first page", page.getContent());
+		assertFalse(page.isUnchanged());
+		//an expired page is revalidated instead of fetched again
+		cache.expire(PAGE_URL);
+		page = new WebPage(new URL(PAGE_URL), null);
+		WebBrowsers.fetch(browser, page);
+		assertEquals("first page", page.getContent());
+		assertTrue(page.isNotModified());
+		assertTrue(page.isUnchanged());
+		assertEquals(1, bodies.get());
+		//and valid again
+		assertEquals("first page", cache.get(PAGE_URL));
+	}
+}
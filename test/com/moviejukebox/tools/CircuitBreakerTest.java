@@ -0,0 +1,38 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for CircuitBreaker class
+ */
+public class CircuitBreakerTest extends TestCase {
+
+	public void testOpensAndCloses() throws Exception {
+		Metrics metrics = new Metrics();
+		CircuitBreaker breaker = new CircuitBreaker("filmdelta.se", 2, 50, metrics);
+		assertEquals("CLOSED", metrics.getCircuitState("filmdelta.se"));
+		assertTrue(breaker.allowRequest());
+		breaker.failure();
+		assertTrue(breaker.allowRequest());
+		breaker.failure();
+		//open after two failures in a row
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals("OPEN", metrics.getCircuitState("filmdelta.se"));
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(60);
+		//one probe at a time when half open
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.failure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		breaker.success();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(2, metrics.getErrorCount(Metrics.CIRCUIT_BREAKER));
+		assertEquals(2, metrics.getMissCount(Metrics.CIRCUIT_BREAKER));
+		assertEquals(1, metrics.getSuccessCount(Metrics.CIRCUIT_BREAKER));
+		assertTrue(metrics.getSummary().indexOf("circuit filmdelta.se: CLOSED") != -1);
+	}
+}
@@ -0,0 +1,52 @@
+package com.moviejukebox.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for CircuitBreakerWebBrowser class
+ */
+public class CircuitBreakerWebBrowserTest extends TestCase {
+
+	public void testFailsFast() throws Exception {
+		//a site that is down fails fast, the expired cached page is used instead
+		final AtomicInteger requests = new AtomicInteger();
+		WebBrowser down = new CircuitBreakerWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				requests.incrementAndGet();
+				throw new IOException("Connection refused");
+			}
+		});
+		String url = "http://down.cdon.se/product/dvd/";
+		int threshold = Integer.parseInt(PropertiesUtil.getProperty("filmdelta.breaker.failures", "5"));
+		for (int i = 0; i < threshold; i++) {
+			try {
+				down.request(url);
+				fail("no page from a site that is down");
+			} catch (IOException e) {
+				assertFalse(e instanceof CircuitOpenException);
+			}
+		}
+		try {
+			down.request(url);
+			fail("no page from a site that is down");
+		} catch (CircuitOpenException e) {
+			assertEquals(threshold, requests.get());
+		}
+		File cacheDir = File.createTempFile("filmdeltacache", "");
+		cacheDir.delete();
+		WebCache cache = new WebCache(cacheDir, 1024 * 1024);
+		cache.setTtl("down.cdon.se", 1);
+		cache.put(url, "cached page");
+		cache.expire(url);
+		WebPage page = new WebPage(new URL(url), null);
+		WebBrowsers.fetch(new CachingWebBrowser(down, cache), page);
+		assertEquals("cached page", page.getContent());
+		assertTrue(page.isUnchanged());
+		assertEquals(threshold, requests.get());
+	}
+}
@@ -0,0 +1,24 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for Deadline class
+ */
+public class DeadlineTest extends TestCase {
+
+	public void testRemainingMillis() throws Exception {
+		Deadline none = new Deadline(0);
+		assertFalse(none.isBounded());
+		assertFalse(none.isExpired());
+		assertEquals(Long.MAX_VALUE, none.getRemainingMillis());
+		Deadline deadline = new Deadline(60000);
+		assertTrue(deadline.getRemainingMillis(0.5) <= 30000);
+		assertTrue(deadline.getRemainingMillis(0.5) > 25000);
+		assertEquals(0, deadline.getRemainingMillis(0));
+		Deadline spent = new Deadline(1);
+		Thread.sleep(5);
+		assertTrue(spent.isExpired());
+		assertEquals(0, spent.getRemainingMillis());
+	}
+}
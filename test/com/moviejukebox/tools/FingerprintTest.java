@@ -0,0 +1,17 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for Fingerprint class
+ */
+public class FingerprintTest extends TestCase {
+
+	public void testOf() {
+		//the FNV-1a offset basis
+		assertEquals("cbf29ce484222325", Fingerprint.of(""));
+		assertEquals(16, Fingerprint.of("a").length());
+		assertEquals(Fingerprint.of("Den lilla sjöjungfrun"), Fingerprint.of(new StringBuilder("Den lilla sjöjungfrun")));
+		assertFalse(Fingerprint.of("Den lilla sjöjungfrun").equals(Fingerprint.of("Den lilla sjojungfrun")));
+	}
+}
@@ -0,0 +1,52 @@
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for HedgedWebBrowser class
+ */
+public class HedgedWebBrowserTest extends TestCase {
+
+	public void testHedgesSlowRequest() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		HedgedWebBrowser browser = new HedgedWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				//the second page is stuck until the test ends or it is cancelled
+				if (requests.incrementAndGet() == 2) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						cancelled.countDown();
+						throw new IOException("interrupted");
+					}
+					return "slow page";
+				}
+				return "page";
+			}
+		}, "hedge.filmdelta.se", 0.95, 1);
+		String url = "http://hedge.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/";
+		assertEquals(-1, browser.getHedgeDelay("hedge.filmdelta.se"));
+		assertEquals("page", browser.request(url));
+		assertTrue(browser.getHedgeDelay("hedge.filmdelta.se") >= 1);
+		assertEquals(-1, browser.getHedgeDelay("google.com"));
+		try {
+			//the stuck request is hedged and the hedge answers
+			long start = System.currentTimeMillis();
+			assertEquals("page", browser.request(url));
+			assertEquals(3, requests.get());
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			//and the stuck request is cancelled
+			assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+		}
+	}
+}
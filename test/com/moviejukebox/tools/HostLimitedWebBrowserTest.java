@@ -0,0 +1,53 @@
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for HostLimitedWebBrowser class
+ */
+public class HostLimitedWebBrowserTest extends TestCase {
+
+	public void testLimitsRequestsPerHost() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final WebBrowser browser = new HostLimitedWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				int now = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), now));
+				}
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted");
+				}
+				running.decrementAndGet();
+				return "page";
+			}
+		});
+		//fail() in a worker thread would not fail the test
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[10];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						browser.request("http://cdon.se/search?q=dexter");
+					} catch (IOException e) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+		assertTrue(maxRunning.get() <= HostLimitedWebBrowser.getLimit("cdon.se"));
+	}
+}
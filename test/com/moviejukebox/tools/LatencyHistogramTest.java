@@ -0,0 +1,21 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LatencyHistogram class
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	public void testPercentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000000L);
+		}
+		assertEquals(100, histogram.getCount());
+		//buckets are at most an eighth wide
+		assertEquals(50, histogram.getPercentile(0.5), 50 / 8.0);
+		assertEquals(99, histogram.getPercentile(0.99), 99 / 8.0);
+		assertTrue(histogram.getPercentile(0.5) >= 50);
+	}
+}
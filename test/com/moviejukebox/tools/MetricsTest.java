@@ -0,0 +1,47 @@
+package com.moviejukebox.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import com.moviejukebox.tools.Metrics.Outcome;
+
+/**
+ * Unit test for Metrics class
+ */
+public class MetricsTest extends TestCase {
+
+	public void testLogSummary() {
+		Metrics metrics = new Metrics();
+		metrics.count(Metrics.WEB_CACHE, Outcome.SUCCESS);
+		metrics.count(Metrics.WEB_CACHE, Outcome.MISS);
+		final List<String> logged = new ArrayList<String>();
+		Handler handler = new Handler() {
+			public void publish(LogRecord record) {
+				logged.add(record.getMessage());
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger("moviejukebox");
+		logger.addHandler(handler);
+		try {
+			metrics.logSummary();
+			//nothing recorded, nothing logged
+			new Metrics().logSummary();
+		} finally {
+			logger.removeHandler(handler);
+		}
+		assertEquals(1, logged.size());
+		assertEquals(metrics.getSummary(), logged.get(0));
+		assertTrue(metrics.getSummary().indexOf(Metrics.WEB_CACHE + ": 1 success, 1 miss, 0 error") != -1);
+	}
+}
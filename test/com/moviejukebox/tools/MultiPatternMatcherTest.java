@@ -0,0 +1,18 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for MultiPatternMatcher class
+ */
+public class MultiPatternMatcherTest extends TestCase {
+
+	public void testFindFirst() {
+		MultiPatternMatcher matcher = new MultiPatternMatcher("he", "she", "hers", "his");
+		int[] found = matcher.findFirst("ushers");
+		assertEquals(4, found[0]);
+		assertEquals(4, found[1]);
+		assertEquals(6, found[2]);
+		assertEquals(-1, found[3]);
+	}
+}
@@ -0,0 +1,56 @@
+package com.moviejukebox.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for PageMarkers class
+ */
+public class PageMarkersTest extends TestCase {
+
+	public void testRead() throws Exception {
+		PageMarkers markers = new PageMarkers(3, "www.filmdelta.se/filmer/", "<b>");
+		//read up to the last marker and the tail
+		assertEquals("<b>x</b> www.filmdelta.se/filmer/123", markers.read(new StringReader("<b>x</b> www.filmdelta.se/filmer/123/slug/ more")));
+		//pages without all markers are read to the end
+		assertEquals("<i>www.filmdelta.se/filmer/1/a/</i>", markers.read(new StringReader("<i>www.filmdelta.se/filmer/1/a/</i>")));
+	}
+
+	public void testCut() throws Exception {
+		PageMarkers markers = new PageMarkers(3, "www.filmdelta.se/filmer/", "<b>");
+		//the same prefix as read, cut while it is read
+		PageMarkers.CutInputStream cut = markers.cut(stream("<b>x</b> www.filmdelta.se/filmer/123/slug/ more"));
+		assertEquals("<b>x</b> www.filmdelta.se/filmer/123", readAll(cut));
+		assertTrue(cut.isCut());
+		//pages without all markers are read to the end
+		cut = markers.cut(stream("<i>www.filmdelta.se/filmer/1/a/</i>"));
+		assertEquals("<i>www.filmdelta.se/filmer/1/a/</i>", readAll(cut));
+		assertFalse(cut.isCut());
+		//a marker split between two reads is found
+		cut = markers.cut(new ByteArrayInputStream("<b> www.filmdelta.se/filmer/42/x".getBytes("US-ASCII")) {
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 5));
+			}
+		});
+		assertEquals("<b> www.filmdelta.se/filmer/42/", readAll(cut));
+		assertTrue(cut.isCut());
+	}
+
+	private static InputStream stream(String page) throws Exception {
+		return new ByteArrayInputStream(page.getBytes("US-ASCII"));
+	}
+
+	private static String readAll(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toString("US-ASCII");
+	}
+}
@@ -0,0 +1,293 @@
+package com.moviejukebox.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit test for PooledWebBrowser class
+ */
+public class PooledWebBrowserTest extends TestCase {
+
+	public void testReusesConnection() throws Exception {
+		final List<Integer> clientPorts = new ArrayList<Integer>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				synchronized (clientPorts) {
+					clientPorts.add(Integer.valueOf(exchange.getRemoteAddress().getPort()));
+				}
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+				gzip.write("<html>komprimerad sida</html>".getBytes("UTF-8"));
+				gzip.close();
+				assertEquals("gzip, deflate", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+				exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+				exchange.sendResponseHeaders(200, bytes.size());
+				exchange.getResponseBody().write(bytes.toByteArray());
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/filmer/15353/";
+			PooledWebBrowser browser = new PooledWebBrowser();
+			assertEquals("<html>komprimerad sida</html>", browser.request(url));
+			assertEquals("<html>komprimerad sida</html>", browser.request(url));
+			//the second request reused the connection of the first
+			assertEquals(2, clientPorts.size());
+			assertEquals(clientPorts.get(0), clientPorts.get(1));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	public void testSendsBrowserHeaders() throws Exception {
+		final List<String> cookies = new ArrayList<String>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String userAgent = exchange.getRequestHeaders().getFirst("User-Agent");
+				synchronized (cookies) {
+					cookies.add(exchange.getRequestHeaders().getFirst("Cookie"));
+				}
+				exchange.getResponseHeaders().add("Set-Cookie", "session=42");
+				send(exchange, 200, "<html>" + userAgent + "</html>");
+			}
+		});
+		server.start();
+		try {
+			String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/filmer/15353/";
+			PooledWebBrowser browser = new PooledWebBrowser();
+			//the browser headers of WebBrowser are sent, not those of the JDK
+			assertTrue(browser.request(url).startsWith("<html>Mozilla"));
+			//and its cookies are kept
+			browser.request(url);
+			assertNull(cookies.get(0));
+			assertTrue(cookies.get(1).contains("session=42"));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	public void testCutsPageAtMarkers() throws Exception {
+		final List<Integer> clientPorts = new ArrayList<Integer>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				synchronized (clientPorts) {
+					clientPorts.add(Integer.valueOf(exchange.getRemoteAddress().getPort()));
+				}
+				StringBuilder page = new StringBuilder("<html><h1>Den lilla sjöjungfrun</h1><div id=\"vote\">");
+				while (page.length() < 1024 * 1024) {
+					page.append("<p>kommentar</p>");
+				}
+				try {
+					send(exchange, 200, page.append("</html>").toString());
+				} catch (IOException e) {
+					//the client stopped reading
+				}
+			}
+		});
+		server.start();
+		try {
+			String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/filmer/15353/";
+			PooledWebBrowser browser = new PooledWebBrowser();
+			PageMarkers markers = new PageMarkers(0, "id=\"vote\"");
+			assertEquals("<html><h1>Den lilla sjöjungfrun</h1><div id=\"vote\"", WebBrowsers.request(browser, url, markers));
+			//the cut connection was dropped instead of read to its end
+			browser.request(url);
+			assertEquals(2, clientPorts.size());
+			assertFalse(clientPorts.get(0).equals(clientPorts.get(1)));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	public void testNotModified() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+				} else {
+					exchange.getResponseHeaders().add("ETag", "\"v1\"");
+					send(exchange, 200, "<html>sida</html>");
+				}
+			}
+		});
+		server.start();
+		try {
+			URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/filmer/15353/");
+			PooledWebBrowser browser = new PooledWebBrowser();
+			WebPage page = new WebPage(url, null);
+			page.setConditional(true);
+			browser.fetch(page);
+			assertEquals("<html>sida</html>", page.getContent());
+			assertEquals("\"v1\"", page.getETag());
+			//the validators of the first response are sent with the second
+			WebPage again = new WebPage(url, null);
+			again.setConditional(true);
+			again.setValidators(page.getETag(), page.getLastModified());
+			browser.fetch(again);
+			assertTrue(again.isNotModified());
+			assertNull(again.getContent());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	public void testDownload() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "inte riktigt en jpg");
+			}
+		});
+		server.start();
+		try {
+			File file = File.createTempFile("poster", ".jpg");
+			WebPage download = new WebPage(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/poster.jpg"), null);
+			download.setFile(file);
+			new PooledWebBrowser().fetch(download);
+			assertEquals("inte riktigt en jpg", FileTools.readFileToString(file));
+			assertNull(download.getContent());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	public void testAbort() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				//the start of the page is sent on /body, the rest when released
+				boolean body = exchange.getRequestURI().getPath().equals("/body");
+				if (body) {
+					exchange.sendResponseHeaders(200, 1000);
+					exchange.getResponseBody().write(new byte[10]);
+					exchange.getResponseBody().flush();
+				}
+				try {
+					release.await(10, TimeUnit.SECONDS);
+					if (body) {
+						exchange.getResponseBody().write(new byte[990]);
+					}
+				} catch (InterruptedException e) {
+					//stop
+				} catch (IOException e) {
+					//aborted
+				}
+				exchange.close();
+			}
+		});
+		ExecutorService handlers = Executors.newCachedThreadPool();
+		server.setExecutor(handlers);
+		server.start();
+		try {
+			String url = "http://127.0.0.1:" + server.getAddress().getPort();
+			//a request waiting for the response fails as soon as it is aborted
+			WebPage waiting = new WebPage(new URL(url + "/headers"), null);
+			Thread reader = fetch(waiting);
+			Thread.sleep(300);
+			long start = System.currentTimeMillis();
+			waiting.abort();
+			reader.join(3000);
+			assertFalse(reader.isAlive());
+			assertTrue(System.currentTimeMillis() - start < 3000);
+			//a body being read stops at its next read, the abort doesn't wait for it
+			WebPage reading = new WebPage(new URL(url + "/body"), null);
+			reader = fetch(reading);
+			Thread.sleep(300);
+			start = System.currentTimeMillis();
+			reading.abort();
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			release.countDown();
+			reader.join(3000);
+			assertFalse(reader.isAlive());
+			assertNull(reading.getContent());
+		} finally {
+			release.countDown();
+			server.stop(0);
+			handlers.shutdown();
+		}
+	}
+
+	public void testFailsWithoutPageConnection() throws Exception {
+		File file = File.createTempFile("page", ".html");
+		file.deleteOnExit();
+		URL url = file.toURI().toURL();
+		//a request that doesn't open its connection through PooledWebBrowser
+		PooledWebBrowser bypassing = new PooledWebBrowser() {
+			public URLConnection openProxiedConnection(URL url) throws IOException {
+				return url.openConnection();
+			}
+		};
+		try {
+			bypassing.fetch(new WebPage(url, null));
+			fail("page read without its PageConnection");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+		//a request that opens two connections
+		PooledWebBrowser twice = new PooledWebBrowser() {
+			public URLConnection openProxiedConnection(URL url) throws IOException {
+				super.openProxiedConnection(url);
+				return super.openProxiedConnection(url);
+			}
+		};
+		try {
+			twice.fetch(new WebPage(url, null));
+			fail("page read from a second connection");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+		//other requests are not affected
+		assertEquals("", new PooledWebBrowser().request(url));
+	}
+
+	/*
+	 * Fetch the page on another thread, the page has no content if the
+	 * fetch failed
+	 */
+	private static Thread fetch(final WebPage page) {
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					new PooledWebBrowser().fetch(page);
+				} catch (IOException e) {
+					page.setContent(null);
+				}
+			}
+		};
+		reader.start();
+		return reader;
+	}
+
+	private static void send(HttpExchange exchange, int status, String page) throws IOException {
+		byte[] bytes = page.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+}
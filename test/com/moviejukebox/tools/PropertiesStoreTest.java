@@ -0,0 +1,59 @@
+package com.moviejukebox.tools;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for PropertiesStore class
+ */
+public class PropertiesStoreTest extends TestCase {
+
+	private File file;
+	private File journal;
+
+	protected void setUp() throws Exception {
+		file = File.createTempFile("store", ".properties");
+		file.delete();
+		journal = new File(file.getPath() + ".log");
+	}
+
+	public void testSave() throws Exception {
+		PropertiesStore store = new PropertiesStore(file, "test");
+		for (int i = 0; i < 100; i++) {
+			store.put("key" + i, "value" + i);
+		}
+		store.save();
+		//the changes are appended to the journal
+		assertTrue(journal.exists());
+		assertEquals(100, new PropertiesStore(file, "test").size());
+		//until it holds more values than the map, then the map is written
+		store.put("key0", "changed");
+		store.save();
+		assertFalse(journal.exists());
+		long length = file.length();
+		//a few changes are appended again, the file is not written
+		store.put("key1", "changed");
+		store.put("key2", "changed");
+		store.save();
+		assertEquals(length, file.length());
+		assertTrue(journal.exists());
+		PropertiesStore read = new PropertiesStore(file, "test");
+		assertEquals(100, read.size());
+		assertEquals("changed", read.get("key0"));
+		assertEquals("changed", read.get("key2"));
+		assertEquals("value3", read.get("key3"));
+	}
+
+	public void testRemove() throws Exception {
+		PropertiesStore store = new PropertiesStore(file, "test");
+		store.put("kept", "1");
+		store.put("removed", "2");
+		store.save();
+		store.remove("removed");
+		store.save();
+		PropertiesStore read = new PropertiesStore(file, "test");
+		assertEquals("1", read.get("kept"));
+		assertNull(read.get("removed"));
+	}
+}
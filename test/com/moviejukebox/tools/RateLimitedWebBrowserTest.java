@@ -0,0 +1,49 @@
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for RateLimitedWebBrowser class
+ */
+public class RateLimitedWebBrowserTest extends TestCase {
+
+	public void testRetriesThrottledRequest() throws Exception {
+		final String[] pages = {"Our systems have detected unusual traffic from your computer network", "search result"};
+		final AtomicInteger requests = new AtomicInteger();
+		WebBrowser browser = new RateLimitedWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				return pages[Math.min(requests.getAndIncrement(), pages.length - 1)];
+			}
+		}, 2, 1);
+		assertEquals("search result", browser.request("http://www.google.com/search?q=dexter"));
+		assertEquals(2, requests.get());
+	}
+
+	public void testThrottlePageOnlyFromGoogle() {
+		String captcha = "Our systems have detected unusual traffic from your computer network";
+		assertTrue(RateLimitedWebBrowser.isThrottlePage("www.google.se", captcha));
+		assertTrue(RateLimitedWebBrowser.isThrottlePage("www.google.com", captcha));
+		assertFalse(RateLimitedWebBrowser.isThrottlePage("www.google.se", "search result"));
+		//a page from another site may quote the captcha
+		assertFalse(RateLimitedWebBrowser.isThrottlePage("www.filmdelta.se", captcha));
+		assertFalse(RateLimitedWebBrowser.isThrottlePage("cdon.se", "<a href=\"/sorry/index\">"));
+	}
+
+	public void testGivesUp() throws Exception {
+		WebBrowser browser = new RateLimitedWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				throw new IOException("Server returned HTTP response code: 503 for URL: " + url);
+			}
+		}, 1, 1);
+		try {
+			browser.request("http://www.example.org/search?q=dexter");
+			fail("Expected the throttled request to fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().indexOf("503") != -1);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for RateLimiter class
+ */
+public class RateLimiterTest extends TestCase {
+
+	public void testAdaptsRate() {
+		RateLimiter limiter = new RateLimiter(10, 1);
+		limiter.throttled();
+		assertEquals(5.0, limiter.getRate(), 0.001);
+		limiter.succeeded();
+		assertEquals(6.0, limiter.getRate(), 0.001);
+		for (int i = 0; i < 10; i++) {
+			limiter.succeeded();
+		}
+		assertEquals(10.0, limiter.getRate(), 0.001);
+	}
+}
@@ -0,0 +1,72 @@
+package com.moviejukebox.tools;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for SingleFlightWebBrowser class
+ */
+public class SingleFlightWebBrowserTest extends TestCase {
+
+	public void testSharesRequestInFlight() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final WebBrowser browser = new SingleFlightWebBrowser(new WebBrowser() {
+			public String request(URL url) throws IOException {
+				requests.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted");
+				}
+				return "page " + url;
+			}
+		});
+		final List<String> pages = new ArrayList<String>();
+		//fail() in a worker thread would not fail the test
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						String page = browser.request("http://www.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/");
+						synchronized (pages) {
+							pages.add(page);
+						}
+					} catch (IOException e) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+			if (i == 0) {
+				started.await();
+			}
+		}
+		//let the other requests find the first one in flight
+		Thread.sleep(100);
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+		assertEquals(1, requests.get());
+		assertEquals(threads.length, pages.size());
+		for (String page : pages) {
+			assertEquals("page http://www.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/", page);
+		}
+		assertEquals(0, SingleFlightWebBrowser.getInFlightCount());
+		//once done the page is fetched again
+		browser.request("http://www.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/");
+		assertEquals(2, requests.get());
+	}
+}
@@ -0,0 +1,18 @@
+package com.moviejukebox.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for StringPool class
+ */
+public class StringPoolTest extends TestCase {
+
+	public void testIntern() {
+		StringPool pool = new StringPool();
+		String page = "<h5>Tom Hanks</h5>";
+		String name = pool.intern(page.substring(4, 13));
+		assertEquals("Tom Hanks", name);
+		assertSame(name, pool.intern(new String("Tom Hanks")));
+		assertEquals(1, pool.size());
+	}
+}
@@ -0,0 +1,69 @@
+package com.moviejukebox.tools;
+
+import java.io.File;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for WebCache class
+ */
+public class WebCacheTest extends TestCase {
+
+	private static final String PAGE_URL = "http://www.filmdelta.se/filmer/15353/den_lilla_sjojungfrun/";
+
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("filmdeltacache", "");
+		cacheDir.delete();
+	}
+
+	public void testPutAndGet() throws Exception {
+		WebCache cache = new WebCache(cacheDir, 1024 * 1024);
+		assertNull(cache.get(PAGE_URL));
+		cache.put(PAGE_URL, "first page", "\"v1\"", null);
+		assertEquals("first page", cache.get(PAGE_URL));
+		assertEquals("\"v1\"", cache.getETag(PAGE_URL));
+		assertEquals(1, cache.size());
+		//hosts without a ttl are not cached
+		assertTrue(cache.isCacheable(new URL(PAGE_URL)));
+		assertFalse(cache.isCacheable(new URL("http://www.imdb.com/title/tt0097757/")));
+	}
+
+	public void testSaveAndReopen() {
+		WebCache cache = new WebCache(cacheDir, 1024 * 1024);
+		cache.put(PAGE_URL, "first page");
+		cache.save();
+		//a new cache reads the saved index
+		cache = new WebCache(cacheDir, 1024 * 1024);
+		assertEquals(1, cache.size());
+		assertEquals("first page", cache.get(PAGE_URL));
+		//no ttl means nothing is valid
+		cache.setTtl("filmdelta.se", 0);
+		assertNull(cache.get(PAGE_URL));
+	}
+
+	public void testExpire() {
+		WebCache cache = new WebCache(cacheDir, 1024 * 1024);
+		cache.put(PAGE_URL, "first page");
+		cache.expire(PAGE_URL);
+		assertNull(cache.get(PAGE_URL));
+		//still there for when the site is down or the page is unchanged
+		assertEquals("first page", cache.getExpired(PAGE_URL));
+		assertEquals("first page", cache.renew(PAGE_URL));
+		assertEquals("first page", cache.get(PAGE_URL));
+		cache.remove(PAGE_URL);
+		assertNull(cache.getExpired(PAGE_URL));
+		assertEquals(0, cache.size());
+	}
+
+	public void testEvictsOldestPages() {
+		WebCache cache = new WebCache(cacheDir, 40);
+		cache.put("http://www.filmdelta.se/filmer/1/a/", "01234567890123456789");
+		cache.put("http://www.filmdelta.se/filmer/2/b/", "01234567890123456789");
+		cache.put("http://www.filmdelta.se/filmer/3/c/", "01234567890123456789");
+		assertNull(cache.get("http://www.filmdelta.se/filmer/1/a/"));
+		assertEquals("01234567890123456789", cache.get("http://www.filmdelta.se/filmer/3/c/"));
+	}
+}